@@ -10,12 +10,19 @@ extern "C" {
 
 __attribute__((import_module("mini_tardis_games"))) void mtg_log(int32_t message_address, int32_t message_len, int32_t level);
 __attribute__((import_module("mini_tardis_games"))) int64_t mtg_nano_time(void);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_get_target_fps(void);
 __attribute__((import_module("mini_tardis_games"))) void mtg_save_persistent_data(int32_t data_address, int32_t data_len);
 __attribute__((import_module("mini_tardis_games"))) int32_t mtg_get_persistent_data_len(void);
 __attribute__((import_module("mini_tardis_games"))) void mtg_get_persistent_data(int32_t data_address);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_open_asset(int32_t name_address, int32_t name_len);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_get_asset_len(int32_t asset);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_read_asset(int32_t asset, int32_t offset, int32_t data_address, int32_t data_len);
+__attribute__((import_module("mini_tardis_games"))) void mtg_blit_asset(int32_t asset, int32_t offset, int32_t x, int32_t y, int32_t width, int32_t height, int32_t stride);
 
 __attribute__((import_module("mini_tardis_games"))) int32_t mtg_random_i32(void);
 __attribute__((import_module("mini_tardis_games"))) void mtg_play_sound(int32_t id_address, int32_t id_len, int32_t category, float volume, float pitch);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_resolve_sound(int32_t id_address, int32_t id_len);
+__attribute__((import_module("mini_tardis_games"))) void mtg_play_resolved_sound(int32_t sound, int32_t category, float volume, float pitch);
 __attribute__((import_module("mini_tardis_games"))) _Noreturn void mtg_close_app(void);
 
 __attribute__((import_module("mini_tardis_games"))) int32_t mtg_get_width(void);
@@ -24,8 +31,15 @@ __attribute__((import_module("mini_tardis_games"))) int32_t mtg_get_raw(int32_t
 __attribute__((import_module("mini_tardis_games"))) void mtg_set_raw(int32_t x, int32_t y, int32_t color);
 __attribute__((import_module("mini_tardis_games"))) void mtg_set_rgb(int32_t x, int32_t y, int32_t color);
 __attribute__((import_module("mini_tardis_games"))) void mtg_set_argb(int32_t x, int32_t y, int32_t color);
+__attribute__((import_module("mini_tardis_games"))) void mtg_blit_raw(int32_t x, int32_t y, int32_t width, int32_t height, int32_t data_address, int32_t stride);
+__attribute__((import_module("mini_tardis_games"))) void mtg_submit_commands(int32_t commands_address, int32_t commands_len);
 __attribute__((import_module("mini_tardis_games"))) void mtg_draw_inbuilt_sprite(int32_t x, int32_t y, int32_t name_address, int32_t name_len);
 __attribute__((import_module("mini_tardis_games"))) void mtg_draw_text(int32_t x, int32_t y, int32_t text_address, int32_t text_len, int32_t size, int32_t argb);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_resolve_sprite(int32_t name_address, int32_t name_len);
+__attribute__((import_module("mini_tardis_games"))) void mtg_draw_sprite(int32_t x, int32_t y, int32_t sprite);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_resolve_font(int32_t name_address, int32_t name_len);
+__attribute__((import_module("mini_tardis_games"))) int32_t mtg_resolve_text(int32_t text_address, int32_t text_len);
+__attribute__((import_module("mini_tardis_games"))) void mtg_draw_resolved_text(int32_t x, int32_t y, int32_t font, int32_t text, int32_t size, int32_t argb);
 
 # ifdef __cplusplus
 }
@@ -65,4 +79,180 @@ typedef enum mtg_click_type
 }
 mtg_click_type_t;
 
+// Batched input
+// Games exporting mtg_input_buffer(data_ptr) and mtg_on_input(data_ptr, events_ptr, count) get all clicks of a tick
+// in one call instead of one mtg_on_click call each. mtg_input_buffer returns the address of room for
+// MTG_INPUT_BATCH_SIZE events, which the host fills before every mtg_on_input call.
+
+#define MTG_INPUT_BATCH_SIZE 64
+
+typedef struct mtg_input_event
+{
+    int32_t type; // mtg_click_type_t
+    int32_t x;
+    int32_t y;
+    int32_t player; // entity id of the clicking player
+}
+mtg_input_event_t;
+
+// Resource handles
+// The mtg_resolve_* functions return -1 if the host can't resolve the name. Handles stay valid for the whole game,
+// so resolving once, e.g. with the macros below for string literals, saves passing and decoding the name on every use.
+
+#define MTG_INVALID_HANDLE (-1)
+
+#define MTG_RESOLVE_ONCE(resolve, name) \
+    ({ \
+        static int32_t mtg_handle_ = -2; \
+        if (mtg_handle_ == -2) mtg_handle_ = resolve((int32_t)(name), sizeof(name) - 1); \
+        mtg_handle_; \
+    })
+
+#define MTG_SPRITE(name) MTG_RESOLVE_ONCE(mtg_resolve_sprite, name)
+#define MTG_SOUND(id) MTG_RESOLVE_ONCE(mtg_resolve_sound, id)
+#define MTG_FONT(name) MTG_RESOLVE_ONCE(mtg_resolve_font, name)
+#define MTG_TEXT(text) MTG_RESOLVE_ONCE(mtg_resolve_text, text)
+
+// Draw command buffer encoder
+// Commands are executed by the host in a single call after mtg_draw or mtg_draw_background returns,
+// so the storage passed to mtg_commands_init has to outlive the draw call (e.g. be static or part of the game data).
+// The encoding functions return 0 and leave the buffer unchanged if the command doesn't fit.
+
+#define MTG_COMMANDS_VERSION 1
+
+typedef enum mtg_command
+{
+    MTG_COMMAND_SET_PIXEL = 1,
+    MTG_COMMAND_FILL_RECT = 2,
+    MTG_COMMAND_LINE = 3,
+    MTG_COMMAND_TEXT = 4,
+    MTG_COMMAND_INBUILT_SPRITE = 5,
+    MTG_COMMAND_BLIT_RAW = 6
+}
+mtg_command_t;
+
+typedef struct mtg_commands
+{
+    uint8_t* data;
+    int32_t len;
+    int32_t capacity;
+}
+mtg_commands_t;
+
+static inline void mtg_commands_push_i32(mtg_commands_t* commands, int32_t value)
+{
+    for (int32_t byte = 0; byte < 4; byte++)
+    {
+        commands->data[commands->len++] = (uint8_t)((uint32_t)value >> (byte * 8));
+    }
+}
+
+static inline void mtg_commands_push_inline(mtg_commands_t* commands, const void* bytes, int32_t len)
+{
+    for (int32_t index = 0; index < len; index++)
+    {
+        commands->data[commands->len++] = ((const uint8_t*)bytes)[index];
+    }
+    while (commands->len % 4 != 0)
+    {
+        commands->data[commands->len++] = 0;
+    }
+}
+
+static inline int32_t mtg_commands_fits(const mtg_commands_t* commands, int32_t arguments, int32_t inline_len)
+{
+    return commands->capacity - commands->len >= (1 + arguments) * 4 + ((inline_len + 3) & ~3);
+}
+
+static inline void mtg_commands_clear(mtg_commands_t* commands)
+{
+    commands->len = 0;
+    mtg_commands_push_i32(commands, MTG_COMMANDS_VERSION);
+}
+
+static inline void mtg_commands_init(mtg_commands_t* commands, uint8_t* storage, int32_t capacity)
+{
+    commands->data = storage;
+    commands->capacity = capacity;
+    mtg_commands_clear(commands);
+}
+
+static inline int32_t mtg_commands_set_pixel_raw(mtg_commands_t* commands, int32_t x, int32_t y, int32_t color)
+{
+    if (!mtg_commands_fits(commands, 3, 0)) return 0;
+    mtg_commands_push_i32(commands, MTG_COMMAND_SET_PIXEL);
+    mtg_commands_push_i32(commands, x);
+    mtg_commands_push_i32(commands, y);
+    mtg_commands_push_i32(commands, color);
+    return 1;
+}
+
+static inline int32_t mtg_commands_fill_rect_raw(mtg_commands_t* commands, int32_t x, int32_t y, int32_t width, int32_t height, int32_t color)
+{
+    if (!mtg_commands_fits(commands, 5, 0)) return 0;
+    mtg_commands_push_i32(commands, MTG_COMMAND_FILL_RECT);
+    mtg_commands_push_i32(commands, x);
+    mtg_commands_push_i32(commands, y);
+    mtg_commands_push_i32(commands, width);
+    mtg_commands_push_i32(commands, height);
+    mtg_commands_push_i32(commands, color);
+    return 1;
+}
+
+static inline int32_t mtg_commands_line_raw(mtg_commands_t* commands, int32_t x0, int32_t y0, int32_t x1, int32_t y1, int32_t color)
+{
+    if (!mtg_commands_fits(commands, 5, 0)) return 0;
+    mtg_commands_push_i32(commands, MTG_COMMAND_LINE);
+    mtg_commands_push_i32(commands, x0);
+    mtg_commands_push_i32(commands, y0);
+    mtg_commands_push_i32(commands, x1);
+    mtg_commands_push_i32(commands, y1);
+    mtg_commands_push_i32(commands, color);
+    return 1;
+}
+
+static inline int32_t mtg_commands_draw_text(mtg_commands_t* commands, int32_t x, int32_t y, const char* text, int32_t text_len, int32_t size, int32_t argb)
+{
+    if (!mtg_commands_fits(commands, 5, text_len)) return 0;
+    mtg_commands_push_i32(commands, MTG_COMMAND_TEXT);
+    mtg_commands_push_i32(commands, x);
+    mtg_commands_push_i32(commands, y);
+    mtg_commands_push_i32(commands, size);
+    mtg_commands_push_i32(commands, argb);
+    mtg_commands_push_i32(commands, text_len);
+    mtg_commands_push_inline(commands, text, text_len);
+    return 1;
+}
+
+static inline int32_t mtg_commands_draw_inbuilt_sprite(mtg_commands_t* commands, int32_t x, int32_t y, const char* name, int32_t name_len)
+{
+    if (!mtg_commands_fits(commands, 3, name_len)) return 0;
+    mtg_commands_push_i32(commands, MTG_COMMAND_INBUILT_SPRITE);
+    mtg_commands_push_i32(commands, x);
+    mtg_commands_push_i32(commands, y);
+    mtg_commands_push_i32(commands, name_len);
+    mtg_commands_push_inline(commands, name, name_len);
+    return 1;
+}
+
+static inline int32_t mtg_commands_blit_raw(mtg_commands_t* commands, int32_t x, int32_t y, int32_t width, int32_t height, const uint8_t* pixels)
+{
+    if (!mtg_commands_fits(commands, 4, width * height)) return 0;
+    mtg_commands_push_i32(commands, MTG_COMMAND_BLIT_RAW);
+    mtg_commands_push_i32(commands, x);
+    mtg_commands_push_i32(commands, y);
+    mtg_commands_push_i32(commands, width);
+    mtg_commands_push_i32(commands, height);
+    mtg_commands_push_inline(commands, pixels, width * height);
+    return 1;
+}
+
+static inline void mtg_commands_submit(const mtg_commands_t* commands)
+{
+    if (commands->len > 4)
+    {
+        mtg_submit_commands((int32_t)commands->data, commands->len);
+    }
+}
+
 #endif
@@ -2,12 +2,19 @@
 extern "C" {
     pub(super) fn mtg_log(message_address: i32, message_len: i32, level: i32);
     pub(super) fn mtg_nano_time() -> i64;
+    pub(super) fn mtg_get_target_fps() -> i32;
     pub(super) fn mtg_save_persistent_data(data_address: i32, data_len: i32);
     pub(super) fn mtg_get_persistent_data_len() -> i32;
     pub(super) fn mtg_get_persistent_data(data_address: i32);
+    pub(super) fn mtg_open_asset(name_address: i32, name_len: i32) -> i32;
+    pub(super) fn mtg_get_asset_len(asset: i32) -> i32;
+    pub(super) fn mtg_read_asset(asset: i32, offset: i32, data_address: i32, data_len: i32) -> i32;
+    pub(super) fn mtg_blit_asset(asset: i32, offset: i32, x: i32, y: i32, width: i32, height: i32, stride: i32);
 
     pub(super) fn mtg_random_i32() -> i32;
     pub(super) fn mtg_play_sound(id_address: i32, id_len: i32, category: i32, volume: f32, pitch: f32);
+    pub(super) fn mtg_resolve_sound(id_address: i32, id_len: i32) -> i32;
+    pub(super) fn mtg_play_resolved_sound(sound: i32, category: i32, volume: f32, pitch: f32);
     pub(super) fn mtg_close_app() -> !;
 
     pub(super) fn mtg_get_width() -> i32;
@@ -16,6 +23,13 @@ extern "C" {
     pub(super) fn mtg_set_raw(x: i32, y: i32, color: i32);
     pub(super) fn mtg_set_rgb(x: i32, y: i32, color: i32);
     pub(super) fn mtg_set_argb(x: i32, y: i32, color: i32);
+    pub(super) fn mtg_blit_raw(x: i32, y: i32, width: i32, height: i32, data_address: i32, stride: i32);
+    pub(super) fn mtg_submit_commands(commands_address: i32, commands_len: i32);
     pub(super) fn mtg_draw_inbuilt_sprite(x: i32, y: i32, name_address: i32, name_len: i32);
     pub(super) fn mtg_draw_text(x: i32, y: i32, text_address: i32, text_len: i32, size: i32, argb: i32);
+    pub(super) fn mtg_resolve_sprite(name_address: i32, name_len: i32) -> i32;
+    pub(super) fn mtg_draw_sprite(x: i32, y: i32, sprite: i32);
+    pub(super) fn mtg_resolve_font(name_address: i32, name_len: i32) -> i32;
+    pub(super) fn mtg_resolve_text(text_address: i32, text_len: i32) -> i32;
+    pub(super) fn mtg_draw_resolved_text(x: i32, y: i32, font: i32, text: i32, size: i32, argb: i32);
 }
\ No newline at end of file
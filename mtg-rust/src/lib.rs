@@ -5,6 +5,10 @@
 
 mod ffi;
 
+use std::cell::RefCell;
+use std::collections::HashMap;
+use std::thread::LocalKey;
+
 fn convert_str(str: &str) -> (i32, i32) {
     let address = (str.as_ptr() as usize)
         .try_into()
@@ -55,6 +59,13 @@ pub fn nano_time() -> i64 {
     unsafe { ffi::mtg_nano_time() }
 }
 
+/// Returns how many times per second the game is currently being drawn.  
+/// This drops below 20 when the game caps its frame rate or the server is under load, so time animations with [`nano_time`] rather than by counting frames.
+#[must_use]
+pub fn target_fps() -> i32 {
+    unsafe { ffi::mtg_get_target_fps() }
+}
+
 pub fn save_persistent_data(data: &[u8]) {
     let (data_address, data_len) = convert_bytes(data);
     unsafe { ffi::mtg_save_persistent_data(data_address, data_len) }
@@ -82,6 +93,136 @@ pub fn get_persistent_data() -> Vec<u8> {
     data
 }
 
+/// A read-only file the game ships in the `<game>.assets` directory next to its `.wasm.gz`.  
+/// The host keeps one copy of every asset for all screens running the game, so large data like the frames of a video
+/// belongs here rather than in the module, where every screen would get its own copy.
+#[derive(Debug, Clone, Copy, PartialEq, Eq, Hash)]
+pub struct Asset(i32);
+
+impl Asset {
+    /// Returns [`None`] if the game has no asset at `path`, relative to its `.assets` directory.
+    #[must_use]
+    pub fn open(path: &str) -> Option<Self> {
+        let (path_address, path_len) = convert_str(path);
+        let handle = unsafe { ffi::mtg_open_asset(path_address, path_len) };
+        (handle >= 0).then_some(Self(handle))
+    }
+
+    #[must_use]
+    #[allow(clippy::len_without_is_empty, clippy::cast_sign_loss)]
+    pub fn len(self) -> u32 {
+        unsafe { ffi::mtg_get_asset_len(self.0) as u32 }
+    }
+
+    /// Copies the bytes starting at `offset` into `buffer` and returns how many were copied,
+    /// which is less than the buffer's length at the end of the asset.
+    #[allow(clippy::cast_sign_loss)]
+    pub fn read(self, offset: u32, buffer: &mut [u8]) -> usize {
+        let (data_address, data_len) = convert_bytes(buffer);
+        unsafe {
+            ffi::mtg_read_asset(
+                self.0,
+                offset.try_into().expect("couldn't cast asset offset to i32"),
+                data_address,
+                data_len,
+            ) as usize
+        }
+    }
+
+    /// Copies the whole asset into memory, prefer [`Asset::read`] or [`Canvas::blit_asset`] for large assets.
+    #[must_use]
+    pub fn read_all(self) -> Vec<u8> {
+        let mut data = vec![0; self.len() as usize];
+        self.read(0, &mut data);
+        data
+    }
+}
+
+type HandleCache = RefCell<HashMap<String, i32>>;
+
+thread_local! {
+    static SPRITES: HandleCache = RefCell::new(HashMap::new());
+    static SOUNDS: HandleCache = RefCell::new(HashMap::new());
+    static FONTS: HandleCache = RefCell::new(HashMap::new());
+    static TEXTS: HandleCache = RefCell::new(HashMap::new());
+}
+
+/// Resolves `name` through the host only the first time, failures included.
+fn resolve_cached(
+    cache: &'static LocalKey<HandleCache>,
+    name: &str,
+    resolve: unsafe extern "C" fn(i32, i32) -> i32,
+) -> Option<i32> {
+    let handle = cache.with(|cache| {
+        if let Some(&handle) = cache.borrow().get(name) {
+            return handle;
+        }
+        let (name_address, name_len) = convert_str(name);
+        let handle = unsafe { resolve(name_address, name_len) };
+        cache.borrow_mut().insert(name.to_owned(), handle);
+        handle
+    });
+    (handle >= 0).then_some(handle)
+}
+
+/// A sprite built into Mini Tardis, resolved by name once and cheap to draw with [`Canvas::draw_sprite`] afterwards.  
+/// The names are the ones accepted by [`TardisCanvasUtils.getSprite`](https://github.com/enjarai/mini-tardis/blob/cd9041c0cd82eb7f92d4e48ea3c24d9a2ec62e24/src/main/java/dev/enjarai/minitardis/canvas/TardisCanvasUtils.java#L41).
+#[derive(Debug, Clone, Copy, PartialEq, Eq, Hash)]
+pub struct Sprite(i32);
+
+impl Sprite {
+    /// Returns [`None`] if the host couldn't resolve the sprite. Resolving the same name again doesn't call the host.
+    #[must_use]
+    pub fn new(name: &str) -> Option<Self> {
+        resolve_cached(&SPRITES, name, ffi::mtg_resolve_sprite).map(Self)
+    }
+}
+
+/// A sound event, resolved by its [`Identifier`](https://maven.fabricmc.net/docs/yarn-1.20.1+build.10/net/minecraft/util/Identifier.html) once
+/// and cheap to play with [`Screen::play_resolved_sound`] afterwards.
+#[derive(Debug, Clone, Copy, PartialEq, Eq, Hash)]
+pub struct Sound(i32);
+
+impl Sound {
+    /// Returns [`None`] if `id` isn't a valid identifier. Resolving the same id again doesn't call the host.
+    #[must_use]
+    pub fn new(id: &str) -> Option<Self> {
+        resolve_cached(&SOUNDS, id, ffi::mtg_resolve_sound).map(Self)
+    }
+}
+
+/// A font to draw resolved [`Text`] with, see [`Canvas::draw_resolved_text`].
+#[derive(Debug, Clone, Copy, PartialEq, Eq, Hash)]
+pub struct Font(i32);
+
+impl Font {
+    /// Returns [`None`] if the host doesn't know the font. Currently only `minecraft:default` exists,
+    /// the font [`Canvas::draw_text`] uses.
+    #[must_use]
+    pub fn new(name: &str) -> Option<Self> {
+        resolve_cached(&FONTS, name, ffi::mtg_resolve_font).map(Self)
+    }
+
+    /// The font [`Canvas::draw_text`] uses.
+    #[must_use]
+    pub fn vanilla() -> Self {
+        Self::new("minecraft:default").expect("the host doesn't know the vanilla font")
+    }
+}
+
+/// A piece of text that is drawn often, like a label, resolved once and cheap to draw with [`Canvas::draw_resolved_text`] afterwards.  
+/// The host keeps a limited number of these for each game, so text that changes all the time belongs in [`Canvas::draw_text`].
+#[derive(Debug, Clone, Copy, PartialEq, Eq, Hash)]
+pub struct Text(i32);
+
+impl Text {
+    /// Returns [`None`] if the host ran out of text handles. Resolving the same text again doesn't call the host.
+    #[must_use]
+    pub fn new(text: &str) -> Option<Self> {
+        resolve_cached(&TEXTS, text, ffi::mtg_resolve_text).map(Self)
+    }
+}
+
 /// A category for a certain sound event, used by [`Screen::play_sound`].  
 /// Analogous to [the class with the same name in yarn mappings](https://maven.fabricmc.net/docs/yarn-1.20.1+build.10/net/minecraft/sound/SoundCategory.html).
 #[derive(Debug, Clone, Copy, PartialEq, Eq)]
@@ -114,10 +255,24 @@ impl Screen {
 
     /// Plays a sound at the screen's position with the specified `category`, `volume` and `pitch`.  
     /// The [`str`] `id` is in the format of an [`Identifier`](https://maven.fabricmc.net/docs/yarn-1.20.1+build.10/net/minecraft/util/Identifier.html) referring to a sound event.
+    /// The id is resolved to a [`Sound`] the first time, so playing the same sound again is cheap.
     pub fn play_sound(&self, id: &str, category: SoundCategory, volume: f32, pitch: f32) {
-        let (id_address, id_len) = convert_str(id);
+        match Sound::new(id) {
+            Some(sound) => self.play_resolved_sound(sound, category, volume, pitch),
+            // let the host report the invalid id like it always did
+            None => {
+                let (id_address, id_len) = convert_str(id);
+                unsafe {
+                    ffi::mtg_play_sound(id_address, id_len, category as i32, volume, pitch);
+                }
+            }
+        }
+    }
+
+    /// Plays a [`Sound`] at the screen's position with the specified `category`, `volume` and `pitch`.
+    pub fn play_resolved_sound(&self, sound: Sound, category: SoundCategory, volume: f32, pitch: f32) {
         unsafe {
-            ffi::mtg_play_sound(id_address, id_len, category as i32, volume, pitch);
+            ffi::mtg_play_resolved_sound(sound.0, category as i32, volume, pitch);
         }
     }
 
@@ -209,17 +364,99 @@ impl Canvas {
         }
     }
 
+    /// Copy a `width` by `height` rectangle of raw color values to the certain `x` and `y` coordinates using a single host call.  
+    /// `pixels` holds the colors row by row, `width` bytes per row. Pixels outside of the canvas are skipped.
+    pub fn blit_raw(&self, x: u32, y: u32, width: u32, height: u32, pixels: &[u8]) {
+        self.blit_raw_region(x, y, pixels, width, 0, 0, width, height);
+    }
+
+    /// Copy a `width` by `height` rectangle of raw color values stored in an [`Asset`] to the certain `x` and `y` coordinates,
+    /// without copying them into the game's memory first.  
+    /// The rectangle starts `offset` bytes into the asset and its rows are `stride` bytes apart, 0 meaning `width`.
+    /// A video can store its frames one after another and draw frame `n` with an offset of `n * width * height`.
+    #[allow(clippy::too_many_arguments)]
+    pub fn blit_asset(&self, x: u32, y: u32, asset: Asset, offset: u32, width: u32, height: u32, stride: u32) {
+        unsafe {
+            ffi::mtg_blit_asset(
+                asset.0,
+                offset.try_into().expect("couldn't cast asset offset to i32"),
+                x.try_into().expect("couldn't cast blit x to i32"),
+                y.try_into().expect("couldn't cast blit y to i32"),
+                width.try_into().expect("couldn't cast blit width to i32"),
+                height.try_into().expect("couldn't cast blit height to i32"),
+                stride.try_into().expect("couldn't cast blit stride to i32"),
+            );
+        }
+    }
+
+    /// Copy the `width` by `height` rectangle starting at `source_x` and `source_y` of a larger buffer of raw color values
+    /// to the certain `x` and `y` coordinates using a single host call.  
+    /// `pixels` holds the colors row by row, `stride` bytes per row.
+    #[allow(clippy::too_many_arguments)]
+    pub fn blit_raw_region(
+        &self,
+        x: u32,
+        y: u32,
+        pixels: &[u8],
+        stride: u32,
+        source_x: u32,
+        source_y: u32,
+        width: u32,
+        height: u32,
+    ) {
+        assert!(source_x + width <= stride, "blit region is wider than its stride");
+        if width == 0 || height == 0 {
+            return;
+        }
+        let start = (source_y * stride + source_x) as usize;
+        let end = ((source_y + height - 1) * stride + source_x + width) as usize;
+        let (data_address, _) = convert_bytes(&pixels[start..end]);
+        unsafe {
+            ffi::mtg_blit_raw(
+                x.try_into().expect("couldn't cast blit x to i32"),
+                y.try_into().expect("couldn't cast blit y to i32"),
+                width.try_into().expect("couldn't cast blit width to i32"),
+                height.try_into().expect("couldn't cast blit height to i32"),
+                data_address,
+                stride.try_into().expect("couldn't cast blit stride to i32"),
+            );
+        }
+    }
+
+    /// Record draw commands into this frame's [`CommandBuffer`].  
+    /// The host executes all of them in a single call once the current draw callback returns.
+    pub fn with_commands<R>(&self, f: impl FnOnce(&mut CommandBuffer) -> R) -> R {
+        COMMANDS.with(|commands| f(&mut commands.borrow_mut()))
+    }
+
     /// Draw a sprite at the certain `x` and `y` coordinates.  
     /// Analogous to calling the [`CanvasUtils.draw`](https://github.com/Patbox/map-canvas-api/blob/b9781dbdd439ff94ff58383ee8ada64928d4bf28/src/main/java/eu/pb4/mapcanvas/api/utils/CanvasUtils.java#L56) method
     /// with the source argument returned by [`TardisCanvasUtils.getSprite`](https://github.com/enjarai/mini-tardis/blob/cd9041c0cd82eb7f92d4e48ea3c24d9a2ec62e24/src/main/java/dev/enjarai/minitardis/canvas/TardisCanvasUtils.java#L41).
+    /// The name is resolved to a [`Sprite`] the first time, so drawing the same sprite again is cheap.
     pub fn draw_inbuilt_sprite(&self, x: u32, y: u32, name: &str) {
-        let (name_address, name_len) = convert_str(name);
+        match Sprite::new(name) {
+            Some(sprite) => self.draw_sprite(x, y, sprite),
+            None => {
+                let (name_address, name_len) = convert_str(name);
+                unsafe {
+                    ffi::mtg_draw_inbuilt_sprite(
+                        x.try_into().expect("couldn't cast inbuilt sprite x to i32"),
+                        y.try_into().expect("couldn't cast inbuilt sprite y to i32"),
+                        name_address,
+                        name_len,
+                    );
+                }
+            }
+        }
+    }
+
+    /// Draw a [`Sprite`] at the certain `x` and `y` coordinates.
+    pub fn draw_sprite(&self, x: u32, y: u32, sprite: Sprite) {
         unsafe {
-            ffi::mtg_draw_inbuilt_sprite(
-                x.try_into().expect("couldn't cast inbuilt sprite x to i32"),
-                y.try_into().expect("couldn't cast inbuilt sprite y to i32"),
-                name_address,
-                name_len,
+            ffi::mtg_draw_sprite(
+                x.try_into().expect("couldn't cast sprite x to i32"),
+                y.try_into().expect("couldn't cast sprite y to i32"),
+                sprite.0,
             );
         }
     }
@@ -240,6 +477,153 @@ impl Canvas {
             );
         }
     }
+
+    /// Draw a [`Text`] in a [`Font`] at the certain `x` and `y` coordinates.  
+    /// Analogous to [`Canvas::draw_text`], minus decoding the text on every call.
+    #[allow(clippy::cast_possible_wrap)]
+    pub fn draw_resolved_text(&self, x: u32, y: u32, font: Font, text: Text, size: u32, argb_color: u32) {
+        unsafe {
+            ffi::mtg_draw_resolved_text(
+                x.try_into().expect("couldn't cast text x to i32"),
+                y.try_into().expect("couldn't cast text y to i32"),
+                font.0,
+                text.0,
+                size.try_into().expect("couldn't cast text size to i32"),
+                argb_color as i32,
+            );
+        }
+    }
+}
+
+/// The version of the draw command format written by [`CommandBuffer`].
+const COMMANDS_VERSION: i32 = 1;
+
+const COMMAND_SET_PIXEL: i32 = 1;
+const COMMAND_FILL_RECT: i32 = 2;
+const COMMAND_LINE: i32 = 3;
+const COMMAND_TEXT: i32 = 4;
+const COMMAND_INBUILT_SPRITE: i32 = 5;
+const COMMAND_BLIT_RAW: i32 = 6;
+
+thread_local! {
+    static COMMANDS: RefCell<CommandBuffer> = const { RefCell::new(CommandBuffer::new()) };
+}
+
+/// A buffer of draw commands, obtained through [`Canvas::with_commands`].  
+/// All commands recorded during a draw callback are executed by the host in a single call once the callback returns,
+/// which is a lot cheaper than calling the corresponding [`Canvas`] methods one by one.
+/// Text, sprite names and pixels are copied into the buffer, so they don't have to outlive the call.
+pub struct CommandBuffer {
+    data: Vec<u8>,
+}
+
+impl CommandBuffer {
+    const fn new() -> Self {
+        Self { data: Vec::new() }
+    }
+
+    fn push_i32(&mut self, value: i32) {
+        self.data.extend_from_slice(&value.to_le_bytes());
+    }
+
+    fn push_command(&mut self, opcode: i32, arguments: &[i32]) {
+        if self.data.is_empty() {
+            self.push_i32(COMMANDS_VERSION);
+        }
+        self.push_i32(opcode);
+        for &argument in arguments {
+            self.push_i32(argument);
+        }
+    }
+
+    fn push_inline(&mut self, bytes: &[u8]) {
+        self.data.extend_from_slice(bytes);
+        self.data.resize(self.data.len().next_multiple_of(4), 0);
+    }
+
+    /// Set the raw color value at the certain `x` and `y` coordinates, see [`Canvas::set_pixel_raw`].
+    pub fn set_pixel_raw(&mut self, x: i32, y: i32, color: i32) {
+        self.push_command(COMMAND_SET_PIXEL, &[x, y, color]);
+    }
+
+    /// Fill a `width` by `height` rectangle starting at the certain `x` and `y` coordinates with a raw color value.
+    pub fn fill_rect_raw(&mut self, x: i32, y: i32, width: u32, height: u32, color: i32) {
+        self.push_command(
+            COMMAND_FILL_RECT,
+            &[
+                x,
+                y,
+                width.try_into().expect("couldn't cast rect width to i32"),
+                height.try_into().expect("couldn't cast rect height to i32"),
+                color,
+            ],
+        );
+    }
+
+    /// Draw a one pixel wide line between two points, both inclusive, with a raw color value.
+    pub fn line_raw(&mut self, x0: i32, y0: i32, x1: i32, y1: i32, color: i32) {
+        self.push_command(COMMAND_LINE, &[x0, y0, x1, y1, color]);
+    }
+
+    /// Draw text at the certain `x` and `y` coordinates, see [`Canvas::draw_text`].
+    #[allow(clippy::cast_possible_wrap)]
+    pub fn draw_text(&mut self, x: i32, y: i32, text: &str, size: u32, argb_color: u32) {
+        self.push_command(
+            COMMAND_TEXT,
+            &[
+                x,
+                y,
+                size.try_into().expect("couldn't cast text size to i32"),
+                argb_color as i32,
+                text.len().try_into().expect("couldn't cast text len to i32"),
+            ],
+        );
+        self.push_inline(text.as_bytes());
+    }
+
+    /// Draw a sprite at the certain `x` and `y` coordinates, see [`Canvas::draw_inbuilt_sprite`].
+    pub fn draw_inbuilt_sprite(&mut self, x: i32, y: i32, name: &str) {
+        self.push_command(
+            COMMAND_INBUILT_SPRITE,
+            &[
+                x,
+                y,
+                name.len().try_into().expect("couldn't cast sprite name len to i32"),
+            ],
+        );
+        self.push_inline(name.as_bytes());
+    }
+
+    /// Copy a `width` by `height` rectangle of raw color values to the certain `x` and `y` coordinates, see [`Canvas::blit_raw`].
+    pub fn blit_raw(&mut self, x: i32, y: i32, width: u32, height: u32, pixels: &[u8]) {
+        let len = (width * height) as usize;
+        self.push_command(
+            COMMAND_BLIT_RAW,
+            &[
+                x,
+                y,
+                width.try_into().expect("couldn't cast blit width to i32"),
+                height.try_into().expect("couldn't cast blit height to i32"),
+            ],
+        );
+        self.push_inline(&pixels[..len]);
+    }
+}
+
+fn clear_commands() {
+    COMMANDS.with(|commands| commands.borrow_mut().data.clear());
+}
+
+fn submit_commands() {
+    COMMANDS.with(|commands| {
+        let commands = commands.borrow();
+        if !commands.data.is_empty() {
+            let (commands_address, commands_len) = convert_bytes(&commands.data);
+            unsafe {
+                ffi::mtg_submit_commands(commands_address, commands_len);
+            }
+        }
+    });
 }
 
 /// Indicates the type of a [`Game::on_click`] callback, usually corresponding to a mouse button.  
@@ -250,6 +634,41 @@ pub enum ClickType {
     Right,
 }
 
+impl ClickType {
+    fn from_raw(raw: i32) -> Self {
+        match raw {
+            0 => Self::Left,
+            1 => Self::Right,
+            other => panic!("unknown click type {other}"),
+        }
+    }
+}
+
+/// A click on the screen, delivered together with the other clicks of the same tick to [`Game::on_input`].
+#[repr(C)]
+#[derive(Debug, Clone, Copy, PartialEq, Eq, Default)]
+pub struct InputEvent {
+    click_type: i32,
+    pub x: i32,
+    pub y: i32,
+    /// The entity id of the player who clicked.
+    pub player: i32,
+}
+
+impl InputEvent {
+    #[must_use]
+    pub fn click_type(&self) -> ClickType {
+        ClickType::from_raw(self.click_type)
+    }
+}
+
+/// The number of events the host delivers to [`Game::on_input`] at most at once.
+const INPUT_BATCH_SIZE: usize = 64;
+
+thread_local! {
+    static INPUT_BUFFER: RefCell<[InputEvent; INPUT_BATCH_SIZE]> = RefCell::new([InputEvent::default(); INPUT_BATCH_SIZE]);
+}
+
 /// Connects a type implementing [`Game`] with the underlying WASM functions.  
 /// Use this macro at the top level once with your game type as the argument.
 #[macro_export]
@@ -270,6 +689,16 @@ macro_rules! game_impl {
             $crate::_on_click::<$game_type>(data_ptr, r#type, x, y)
         }
 
+        #[no_mangle]
+        pub extern "C" fn mtg_input_buffer(data_ptr: i32) -> i32 {
+            $crate::_input_buffer(data_ptr)
+        }
+
+        #[no_mangle]
+        pub extern "C" fn mtg_on_input(data_ptr: i32, events_ptr: i32, count: i32) {
+            $crate::_on_input::<$game_type>(data_ptr, events_ptr, count);
+        }
+
         #[no_mangle]
         pub extern "C" fn mtg_draw_background(data_ptr: i32) {
             $crate::_draw_background::<$game_type>(data_ptr);
@@ -309,6 +738,14 @@ pub trait Game {
     #[allow(clippy::must_use_candidate)]
     fn on_click(&mut self, screen: &Screen, click_type: ClickType, x: i32, y: i32) -> bool;
 
+    /// Receives all clicks of a tick at once, in the order they happened.  
+    /// Calls [`on_click`](Game::on_click) for every event by default.
+    fn on_input(&mut self, screen: &Screen, events: &[InputEvent]) {
+        for event in events {
+            self.on_click(screen, event.click_type(), event.x, event.y);
+        }
+    }
+
     fn draw_background(&mut self, _screen: &Screen, canvas: &Canvas) {
         canvas.draw_inbuilt_sprite(0, 0, "app_background");
     }
@@ -331,25 +768,40 @@ pub fn _register_game<G: Game>() -> i32 {
 #[doc(hidden)]
 pub fn _draw<G: Game>(data_ptr: i32) {
     let game = unsafe { (data_ptr as *mut G).as_mut() }.expect("game was null in draw");
+    clear_commands();
     game.draw(&Screen { _dummy: () }, &Canvas { _dummy: () });
+    submit_commands();
 }
 
 #[doc(hidden)]
 #[allow(clippy::must_use_candidate)]
 pub fn _on_click<G: Game>(data_ptr: i32, r#type: i32, x: i32, y: i32) -> i32 {
     let game = unsafe { (data_ptr as *mut G).as_mut() }.expect("game was null in on_click");
-    let click_type = match r#type {
-        0 => ClickType::Left,
-        1 => ClickType::Right,
-        other => panic!("unknown click type {other}"),
-    };
-    i32::from(game.on_click(&Screen { _dummy: () }, click_type, x, y))
+    i32::from(game.on_click(&Screen { _dummy: () }, ClickType::from_raw(r#type), x, y))
+}
+
+#[doc(hidden)]
+#[must_use]
+pub fn _input_buffer(_data_ptr: i32) -> i32 {
+    INPUT_BUFFER.with(|buffer| buffer.as_ptr() as i32)
+}
+
+#[doc(hidden)]
+#[allow(clippy::cast_sign_loss)]
+pub fn _on_input<G: Game>(data_ptr: i32, events_ptr: i32, count: i32) {
+    let game = unsafe { (data_ptr as *mut G).as_mut() }.expect("game was null in on_input");
+    assert!((count as usize) <= INPUT_BATCH_SIZE, "got more input events than the buffer holds");
+    // the host wrote the events into the buffer, so it isn't borrowed anywhere
+    let events = unsafe { std::slice::from_raw_parts(events_ptr as *const InputEvent, count as usize) };
+    game.on_input(&Screen { _dummy: () }, events);
 }
 
 #[doc(hidden)]
 pub fn _draw_background<G: Game>(data_ptr: i32) {
     let game = unsafe { (data_ptr as *mut G).as_mut() }.expect("game was null in draw_background");
+    clear_commands();
     game.draw_background(&Screen { _dummy: () }, &Canvas { _dummy: () });
+    submit_commands();
 }
 
 #[doc(hidden)]
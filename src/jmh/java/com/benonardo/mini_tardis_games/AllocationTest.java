@@ -0,0 +1,103 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.types.Value;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Checks that the host side of drawing a frame doesn't allocate, so a server full of consoles doesn't keep the garbage
+ * collector busy. Makes a frame of {@code mtg_get_raw} and {@code mtg_set_raw} calls for every pixel, the host function
+ * path games spend most calls on, and fails if a frame allocates more than {@link #MAX_BYTES_PER_FRAME} once the JIT
+ * has compiled it.
+ * <p>
+ * Frames drawn by a game aren't checked: the interpreter allocates for every call and value of the guest, which
+ * depends on Chicory rather than on this mod.
+ */
+public final class AllocationTest {
+
+    // the view's bookkeeping, not the pixels
+    private static final long MAX_BYTES_PER_FRAME = 1024;
+    // a frame makes a host call per pixel, so this is plenty for the JIT to compile them
+    private static final int WARMUP_FRAMES = 100;
+    private static final int CHECKED_FRAMES = 100;
+
+    private AllocationTest() {
+    }
+
+    public static void main(String[] args) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) || !threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Skipped, this JVM can't measure the memory a thread allocated");
+            return;
+        }
+        var screen = new HeadlessScreen(0);
+        var canvas = new CanvasImage(SampleGames.WIDTH, SampleGames.HEIGHT);
+        var view = new WasmBackedAppView(new CustomApp(SampleGames.id("counter-c")), SampleGames.parse("counter-c"), GameMetadata.EMPTY, GameAssets.EMPTY);
+        var perPixel = new PerPixelFrame(view);
+        if (!check(threads, "per pixel frame", () -> view.runAsGuest(screen, canvas, perPixel))) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(com.sun.management.ThreadMXBean threads, String name, Runnable frame) {
+        for (var i = 0; i < WARMUP_FRAMES; i++) {
+            frame.run();
+        }
+        var thread = Thread.currentThread().getId();
+        var before = threads.getThreadAllocatedBytes(thread);
+        for (var i = 0; i < CHECKED_FRAMES; i++) {
+            frame.run();
+        }
+        var perFrame = (threads.getThreadAllocatedBytes(thread) - before) / CHECKED_FRAMES;
+        var passed = perFrame <= MAX_BYTES_PER_FRAME;
+        System.out.printf(Locale.ROOT, "%-20s %8d bytes per frame %s%n", name, perFrame, passed ? "ok" : "FAILED, expected at most " + MAX_BYTES_PER_FRAME);
+        return passed;
+    }
+
+    /**
+     * Calls the host functions directly with prebuilt arguments, since the interpreter builds them for real calls
+     * and they don't count towards the host's allocations.
+     */
+    private static final class PerPixelFrame implements Runnable {
+
+        private final Instance instance;
+        private final HostFunction getRaw;
+        private final HostFunction setRaw;
+        private final Value[][] getArgs;
+        private final Value[][] setArgs;
+
+        private PerPixelFrame(WasmBackedAppView view) {
+            this.instance = view.getInstance();
+            this.getRaw = hostFunction(view, "mtg_get_raw");
+            this.setRaw = hostFunction(view, "mtg_set_raw");
+            var pixels = SampleGames.WIDTH * SampleGames.HEIGHT;
+            this.getArgs = new Value[pixels][];
+            this.setArgs = new Value[pixels][];
+            for (var i = 0; i < pixels; i++) {
+                var x = Value.i32(i % SampleGames.WIDTH);
+                var y = Value.i32(i / SampleGames.WIDTH);
+                this.getArgs[i] = new Value[]{x, y};
+                this.setArgs[i] = new Value[]{x, y, Value.i32(i & 0x7F)};
+            }
+        }
+
+        private static HostFunction hostFunction(WasmBackedAppView view, String name) {
+            return Arrays.stream(view.getHostFunctions())
+                    .filter(hostFunction -> hostFunction.fieldName().equals(name))
+                    .findFirst()
+                    .orElseThrow();
+        }
+
+        @Override
+        public void run() {
+            for (var i = 0; i < this.getArgs.length; i++) {
+                this.getRaw.handle().apply(this.instance, this.getArgs[i]);
+                this.setRaw.handle().apply(this.instance, this.setArgs[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.benonardo.mini_tardis_games;
+
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvent;
+import net.minecraft.util.math.random.Random;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link GameScreen} without a world, standing in for a console screen block entity.
+ */
+public final class HeadlessScreen implements GameScreen {
+
+    private final Random random;
+    private int soundsPlayed;
+    private boolean closed;
+
+    public HeadlessScreen(long seed) {
+        this.random = Random.create(seed);
+    }
+
+    @Override
+    @NotNull
+    public Random getRandom() {
+        return this.random;
+    }
+
+    @Override
+    public void playSound(@NotNull SoundEvent sound, @NotNull SoundCategory category, float volume, float pitch) {
+        this.soundsPlayed++;
+    }
+
+    @Override
+    public void closeApp() {
+        this.closed = true;
+    }
+
+    public int getSoundsPlayed() {
+        return this.soundsPlayed;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    public void reopen() {
+        this.closed = false;
+    }
+}
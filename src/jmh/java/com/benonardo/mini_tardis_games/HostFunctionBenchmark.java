@@ -0,0 +1,139 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.types.Value;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls single host functions the way a guest would, without going through the interpreter.
+ * {@code mtg_close_app} always aborts the guest and {@code mtg_draw_inbuilt_sprite} needs Mini Tardis' sprites
+ * loaded by a running game, so both are left out. The sprite that {@code mtg_resolve_sprite} and
+ * {@code mtg_draw_sprite} use is registered up front for the same reason, and the asset functions read a synthetic
+ * asset the size of a few frames.
+ * <p>
+ * A parameter like {@code mtg_blit_raw:clipped} calls the function before the colon with different arguments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(HostFunctionBenchmark.CALLS_PER_INVOCATION)
+public class HostFunctionBenchmark {
+
+    static final int CALLS_PER_INVOCATION = 256;
+    private static final int FRAME_SIZE = SampleGames.WIDTH * SampleGames.HEIGHT;
+    private static final int SCRATCH_SIZE = FRAME_SIZE;
+    private static final String ASSET = "frames.bin";
+    private static final String SPRITE = "benchmark";
+
+    @Param({
+            "mtg_log", "mtg_random_i32", "mtg_nano_time", "mtg_get_target_fps", "mtg_get_width", "mtg_get_height",
+            "mtg_get_raw", "mtg_set_raw", "mtg_set_rgb", "mtg_set_argb", "mtg_blit_raw", "mtg_blit_raw:clipped",
+            "mtg_blit_raw:strided", "mtg_submit_commands", "mtg_draw_text", "mtg_resolve_sprite", "mtg_draw_sprite",
+            "mtg_resolve_font", "mtg_resolve_text", "mtg_draw_resolved_text", "mtg_play_sound", "mtg_resolve_sound",
+            "mtg_play_resolved_sound", "mtg_save_persistent_data", "mtg_get_persistent_data_len",
+            "mtg_get_persistent_data", "mtg_open_asset", "mtg_get_asset_len", "mtg_read_asset", "mtg_blit_asset",
+            "mtg_blit_asset:clipped"
+    })
+    public String function;
+
+    private WasmBackedAppView view;
+    private HeadlessScreen screen;
+    private CanvasImage canvas;
+    private Instance instance;
+    private HostFunction hostFunction;
+    private Value[] args;
+
+    @Setup
+    public void setup() {
+        this.screen = new HeadlessScreen(0);
+        this.canvas = new CanvasImage(SampleGames.WIDTH, SampleGames.HEIGHT);
+        var module = SampleGames.parse("counter-c");
+        var frames = new byte[2 * FRAME_SIZE];
+        for (var i = 0; i < frames.length; i++) {
+            frames[i] = (byte) (i & 0x7F);
+        }
+        var assets = GameAssets.of(Map.of(ASSET, frames));
+        this.view = new WasmBackedAppView(new CustomApp(SampleGames.id("counter-c")), module, GameMetadata.EMPTY, assets);
+        this.instance = this.view.getInstance();
+        var separator = this.function.indexOf(':');
+        var name = separator == -1 ? this.function : this.function.substring(0, separator);
+        this.hostFunction = Arrays.stream(this.view.getHostFunctions())
+                .filter(hostFunction -> hostFunction.fieldName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown host function " + name));
+
+        // the end of the guest's memory is unused by the small counter game
+        var memory = this.instance.memory();
+        var scratch = memory.pages() * Memory.PAGE_SIZE - SCRATCH_SIZE;
+        var text = "1234".getBytes(StandardCharsets.UTF_8);
+        memory.write(scratch, text);
+        var sound = "minecraft:ui.button.click".getBytes(StandardCharsets.UTF_8);
+        memory.write(scratch + 16, sound);
+        var font = "default".getBytes(StandardCharsets.UTF_8);
+        memory.write(scratch + 48, font);
+        var sprite = SPRITE.getBytes(StandardCharsets.UTF_8);
+        memory.write(scratch + 64, sprite);
+        var asset = ASSET.getBytes(StandardCharsets.UTF_8);
+        memory.write(scratch + 80, asset);
+
+        // resolving is meant to happen once, the benchmark measures the lookups of every later call
+        var resources = GuestResources.of(module);
+        var spriteHandle = resources.sprites.register(SPRITE, new CanvasImage(16, 16));
+        var fontHandle = resources.fonts.resolve("default");
+        var textHandle = resources.texts.resolve("1234");
+        var soundHandle = resources.sounds.resolve("minecraft:ui.button.click");
+        var assetHandle = assets.find(ASSET);
+
+        this.args = switch (this.function) {
+            case "mtg_log" -> new Value[]{Value.i32(scratch), Value.i32(text.length), Value.i32(0)};
+            case "mtg_get_raw" -> new Value[]{Value.i32(64), Value.i32(48)};
+            case "mtg_set_raw" -> new Value[]{Value.i32(64), Value.i32(48), Value.i32(34)};
+            case "mtg_set_rgb", "mtg_set_argb" -> new Value[]{Value.i32(64), Value.i32(48), Value.i32(0xFF336699)};
+            case "mtg_blit_raw" -> new Value[]{Value.i32(0), Value.i32(0), Value.i32(SampleGames.WIDTH), Value.i32(SampleGames.HEIGHT), Value.i32(scratch), Value.i32(0)};
+            // three quarters of the rectangle are off the canvas
+            case "mtg_blit_raw:clipped" -> new Value[]{Value.i32(-SampleGames.WIDTH / 2), Value.i32(-SampleGames.HEIGHT / 2), Value.i32(SampleGames.WIDTH), Value.i32(SampleGames.HEIGHT), Value.i32(scratch), Value.i32(0)};
+            // the top left quarter of a full screen buffer
+            case "mtg_blit_raw:strided" -> new Value[]{Value.i32(0), Value.i32(0), Value.i32(SampleGames.WIDTH / 2), Value.i32(SampleGames.HEIGHT / 2), Value.i32(scratch), Value.i32(SampleGames.WIDTH)};
+            case "mtg_submit_commands" -> new Value[]{Value.i32(scratch), Value.i32(4)};
+            case "mtg_draw_text" -> new Value[]{Value.i32(0), Value.i32(0), Value.i32(scratch), Value.i32(text.length), Value.i32(24), Value.i32(0xFFFFFFFF)};
+            case "mtg_resolve_sprite" -> new Value[]{Value.i32(scratch + 64), Value.i32(sprite.length)};
+            case "mtg_draw_sprite" -> new Value[]{Value.i32(8), Value.i32(8), Value.i32(spriteHandle)};
+            case "mtg_resolve_font" -> new Value[]{Value.i32(scratch + 48), Value.i32(font.length)};
+            case "mtg_resolve_text" -> new Value[]{Value.i32(scratch), Value.i32(text.length)};
+            case "mtg_draw_resolved_text" -> new Value[]{Value.i32(0), Value.i32(0), Value.i32(fontHandle), Value.i32(textHandle), Value.i32(24), Value.i32(0xFFFFFFFF)};
+            case "mtg_play_sound" -> new Value[]{Value.i32(scratch + 16), Value.i32(sound.length), Value.i32(0), Value.f32(Float.floatToIntBits(1.0f)), Value.f32(Float.floatToIntBits(1.0f))};
+            case "mtg_resolve_sound" -> new Value[]{Value.i32(scratch + 16), Value.i32(sound.length)};
+            case "mtg_play_resolved_sound" -> new Value[]{Value.i32(soundHandle), Value.i32(0), Value.f32(Float.floatToIntBits(1.0f)), Value.f32(Float.floatToIntBits(1.0f))};
+            case "mtg_save_persistent_data" -> new Value[]{Value.i32(scratch), Value.i32(8)};
+            case "mtg_get_persistent_data" -> new Value[]{Value.i32(scratch)};
+            case "mtg_open_asset" -> new Value[]{Value.i32(scratch + 80), Value.i32(asset.length)};
+            case "mtg_get_asset_len" -> new Value[]{Value.i32(assetHandle)};
+            // a frame, like a game streaming a video through its own memory
+            case "mtg_read_asset" -> new Value[]{Value.i32(assetHandle), Value.i32(FRAME_SIZE), Value.i32(scratch), Value.i32(FRAME_SIZE)};
+            case "mtg_blit_asset" -> new Value[]{Value.i32(assetHandle), Value.i32(FRAME_SIZE), Value.i32(0), Value.i32(0), Value.i32(SampleGames.WIDTH), Value.i32(SampleGames.HEIGHT), Value.i32(0)};
+            case "mtg_blit_asset:clipped" -> new Value[]{Value.i32(assetHandle), Value.i32(FRAME_SIZE), Value.i32(-SampleGames.WIDTH / 2), Value.i32(-SampleGames.HEIGHT / 2), Value.i32(SampleGames.WIDTH), Value.i32(SampleGames.HEIGHT), Value.i32(0)};
+            default -> Value.EMPTY_VALUES;
+        };
+    }
+
+    @Benchmark
+    public void call(Blackhole blackhole) {
+        this.view.runAsGuest(this.screen, this.canvas, () -> {
+            for (var i = 0; i < CALLS_PER_INVOCATION; i++) {
+                blackhole.consume(this.hostFunction.handle().apply(this.instance, this.args));
+            }
+        });
+    }
+}
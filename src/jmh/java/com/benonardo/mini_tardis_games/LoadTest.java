@@ -0,0 +1,140 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
+import net.minecraft.util.ClickType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a growing number of headless screens at 20 ticks per second the way the server would, with synthetic clicks,
+ * and reports how well they keep up. Meant for sizing hardware, so unlike the benchmarks it runs in real time.
+ * <p>
+ * Options: {@code --games counter,counter-c} (spread round robin over the screens), {@code --screens 1,10,100},
+ * {@code --seconds 10} per step, {@code --clicks 2} per screen and second, and {@code --async} to run the games on
+ * worker threads.
+ */
+public final class LoadTest {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1) / FramePacer.TICKS_PER_SECOND;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        var games = List.of("counter", "counter-c");
+        var screenCounts = new int[]{1, 10, 50, 100, 200};
+        var seconds = 10;
+        var clicksPerSecond = 2.0;
+        var async = false;
+        for (var i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = List.of(args[++i].split(","));
+                case "--screens" -> screenCounts = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--seconds" -> seconds = Integer.parseInt(args[++i]);
+                case "--clicks" -> clicksPerSecond = Double.parseDouble(args[++i]);
+                case "--async" -> async = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        var defaults = MiniTardisGamesConfig.DEFAULT;
+        MiniTardisGames.setConfig(new MiniTardisGamesConfig(defaults.maxCallMillis(), defaults.maxHostCalls(), async,
+                defaults.workerThreads(), defaults.instancePoolSize(), defaults.instancePoolIdleSeconds(),
+                defaults.maxInstancePages(), defaults.maxGuestMemoryMegabytes(), defaults.hibernateIdleSeconds(),
+                defaults.framePacingMspt(), defaults.maxPersistentDataBytes(),
+                defaults.persistentDataCompressionThreshold(), defaults.glyphRunCacheSize()));
+
+        var modules = new Module[games.size()];
+        for (var i = 0; i < modules.length; i++) {
+            modules[i] = SampleGames.parse(games.get(i));
+        }
+        System.out.printf(Locale.ROOT, "%s for %d s per step, %.1f clicks per screen and second, %s%n",
+                games, seconds, clicksPerSecond, async ? "async" : "on the tick thread");
+        System.out.printf(Locale.ROOT, "%8s %10s %8s %8s %8s %8s %10s %12s%n",
+                "screens", "fps/screen", "p50 ms", "p95 ms", "p99 ms", "max ms", "heap MiB", "guest MiB");
+        for (var screens : screenCounts) {
+            run(games, modules, screens, seconds * FramePacer.TICKS_PER_SECOND, clicksPerSecond / FramePacer.TICKS_PER_SECOND);
+        }
+    }
+
+    private static void run(List<String> games, Module[] modules, int count, int ticks, double clickChance) throws InterruptedException {
+        var random = new SplittableRandom(count);
+        var screens = new ArrayList<Console>(count);
+        for (var i = 0; i < count; i++) {
+            var game = i % modules.length;
+            var screen = new HeadlessScreen(i);
+            var view = new WasmBackedAppView(new CustomApp(SampleGames.id(games.get(game))), modules[game], GameMetadata.EMPTY, GameAssets.EMPTY);
+            view.screenOpen(screen);
+            screens.add(new Console(view, screen, new CanvasImage(SampleGames.WIDTH, SampleGames.HEIGHT)));
+        }
+        var framesBefore = countFrames();
+        var tickNanos = new long[ticks];
+        var averageTickMillis = 0f;
+        var nextTick = System.nanoTime();
+        for (var tick = 0; tick < ticks; tick++) {
+            var start = System.nanoTime();
+            for (var i = 0; i < screens.size(); i++) {
+                var console = screens.get(i);
+                if (console.screen().isClosed()) {
+                    // games like bad apple end on their own, start them over like a player would
+                    console.screen().reopen();
+                    console.view().screenOpen(console.screen());
+                }
+                if (random.nextDouble() < clickChance) {
+                    var type = random.nextBoolean() ? ClickType.LEFT : ClickType.RIGHT;
+                    console.view().onClick(console.screen(), i, type, random.nextInt(SampleGames.WIDTH), random.nextInt(SampleGames.HEIGHT));
+                }
+                console.view().drawBackground(console.screen(), console.canvas());
+                console.view().draw(console.screen(), console.canvas());
+                console.view().screenTick(console.screen());
+            }
+            if (tick % FramePacer.TICKS_PER_SECOND == 0) {
+                GuestMemory.enforce();
+            }
+            var elapsed = System.nanoTime() - start;
+            tickNanos[tick] = elapsed;
+            // the same kind of average the server reports through getTickTime()
+            averageTickMillis = averageTickMillis * 0.8f + elapsed / 1_000_000f * 0.2f;
+            FramePacer.onServerTick(averageTickMillis);
+            nextTick += TICK_NANOS;
+            var sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            } else {
+                // overloaded, like the server, don't try to catch up
+                nextTick = System.nanoTime();
+            }
+        }
+        var frames = countFrames() - framesBefore;
+        var guestBytes = GuestMemory.getResidentBytes();
+        var runtime = Runtime.getRuntime();
+        var heapBytes = runtime.totalMemory() - runtime.freeMemory();
+
+        Arrays.sort(tickNanos);
+        var simulatedSeconds = (double) ticks / FramePacer.TICKS_PER_SECOND;
+        System.out.printf(Locale.ROOT, "%8d %10.1f %8.2f %8.2f %8.2f %8.2f %10d %12d%n",
+                count, frames / simulatedSeconds / count,
+                percentile(tickNanos, 0.50), percentile(tickNanos, 0.95), percentile(tickNanos, 0.99), tickNanos[ticks - 1] / 1e6,
+                heapBytes / 1024 / 1024, guestBytes / 1024 / 1024);
+
+        for (var console : screens) {
+            console.view().screenClose(console.screen());
+        }
+    }
+
+    private static long countFrames() {
+        return GameMetrics.snapshot().stream().mapToLong(GameMetrics.Snapshot::frames).sum();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    private record Console(WasmBackedAppView view, HeadlessScreen screen, CanvasImage canvas) {
+    }
+}
@@ -0,0 +1,58 @@
+package com.benonardo.mini_tardis_games;
+
+import eu.pb4.mapcanvas.api.utils.CanvasUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(MapColorCacheBenchmark.COLOR_COUNT)
+public class MapColorCacheBenchmark {
+
+    static final int COLOR_COUNT = 16384;
+
+    private final int[] colors = new int[COLOR_COUNT];
+
+    @Setup
+    public void setup() {
+        var random = new Random(0);
+        for (var i = 0; i < COLOR_COUNT; i++) {
+            colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+    }
+
+    @Benchmark
+    public void findClosestColor(Blackhole blackhole) {
+        for (var color : colors) {
+            blackhole.consume(CanvasUtils.findClosestColor(color));
+        }
+    }
+
+    @Benchmark
+    public void cachedRgb(Blackhole blackhole) {
+        for (var color : colors) {
+            blackhole.consume(MapColorCache.fromRgb(color));
+        }
+    }
+
+    @Benchmark
+    public void findClosestColorArgb(Blackhole blackhole) {
+        for (var color : colors) {
+            blackhole.consume(CanvasUtils.findClosestColorARGB(color));
+        }
+    }
+
+    @Benchmark
+    public void cachedArgb(Blackhole blackhole) {
+        for (var color : colors) {
+            blackhole.consume(MapColorCache.fromArgb(color));
+        }
+    }
+}
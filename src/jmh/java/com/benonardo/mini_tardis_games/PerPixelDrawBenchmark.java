@@ -0,0 +1,76 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasm.types.Value;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A frame drawn one pixel at a time through {@code mtg_get_raw} and {@code mtg_set_raw}, the worst case for the host
+ * function dispatch. Run with {@code -prof gc} to see the allocation rate, {@link AllocationTest} checks that the host
+ * side of that path doesn't allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerPixelDrawBenchmark {
+
+    private WasmBackedAppView view;
+    private HeadlessScreen screen;
+    private CanvasImage canvas;
+    private Instance instance;
+    private HostFunction getRaw;
+    private HostFunction setRaw;
+    private Value[][] getArgs;
+    private Value[][] setArgs;
+    private Value[] lastResult;
+
+    @Setup
+    public void setup() {
+        this.screen = new HeadlessScreen(0);
+        this.canvas = new CanvasImage(SampleGames.WIDTH, SampleGames.HEIGHT);
+        this.view = new WasmBackedAppView(new CustomApp(SampleGames.id("counter-c")), SampleGames.parse("counter-c"), GameMetadata.EMPTY, GameAssets.EMPTY);
+        this.instance = this.view.getInstance();
+        this.getRaw = hostFunction("mtg_get_raw");
+        this.setRaw = hostFunction("mtg_set_raw");
+        // the interpreter builds the arguments, so they don't count towards the host's allocations
+        var pixels = SampleGames.WIDTH * SampleGames.HEIGHT;
+        this.getArgs = new Value[pixels][];
+        this.setArgs = new Value[pixels][];
+        for (var i = 0; i < pixels; i++) {
+            var x = Value.i32(i % SampleGames.WIDTH);
+            var y = Value.i32(i / SampleGames.WIDTH);
+            this.getArgs[i] = new Value[]{x, y};
+            this.setArgs[i] = new Value[]{x, y, Value.i32(i & 0x7F)};
+        }
+    }
+
+    private HostFunction hostFunction(String name) {
+        return Arrays.stream(this.view.getHostFunctions())
+                .filter(hostFunction -> hostFunction.fieldName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void drawFrame() {
+        this.view.runAsGuest(this.screen, this.canvas, () -> {
+            for (var i = 0; i < this.getArgs.length; i++) {
+                this.lastResult = this.getRaw.handle().apply(this.instance, this.getArgs[i]);
+                this.setRaw.handle().apply(this.instance, this.setArgs[i]);
+            }
+        });
+    }
+
+    @Benchmark
+    public Value[] fullScreen() {
+        drawFrame();
+        return this.lastResult;
+    }
+}
@@ -0,0 +1,77 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.HostImports;
+import com.dylibso.chicory.wasm.types.Value;
+import com.dylibso.chicory.wasm.types.ValueType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link GuestProfiler} can read the interpreter's call stack with the pinned Chicory version, since it
+ * relies on Chicory's internals through reflection. Instantiates a sample game with host functions that read the call
+ * stack when the guest calls them, and fails unless the stack holds the guest's functions.
+ */
+public final class ProfilerSupportTest {
+
+    private ProfilerSupportTest() {
+    }
+
+    public static void main(String[] args) {
+        var unsupportedReason = GuestProfiler.getUnsupportedReason();
+        if (unsupportedReason != null) {
+            fail(unsupportedReason);
+        }
+        var imports = WasmImportSection.imports(ModuleCache.inflate(SampleGames.read("counter-c")));
+        var stacks = new ArrayList<int[]>();
+        var hostFunctions = new HostFunction[imports.size()];
+        for (var i = 0; i < hostFunctions.length; i++) {
+            var type = imports.get(i).type();
+            if (type == null) {
+                fail("counter-c imports " + imports.get(i).name() + ", which isn't a function");
+            }
+            var results = type.returns().stream().map(ProfilerSupportTest::zero).toArray(Value[]::new);
+            hostFunctions[i] = new HostFunction(
+                    (instance, arguments) -> {
+                        stacks.add(GuestProfiler.callStack(instance));
+                        return results;
+                    },
+                    imports.get(i).module(),
+                    imports.get(i).name(),
+                    type.params(),
+                    type.returns()
+            );
+        }
+        var instance = SampleGames.parse("counter-c").instantiate(new HostImports(hostFunctions));
+        // reads the length of the persistent data before anything else
+        instance.export(GameMetrics.Export.ALLOC_DATA.getName()).apply();
+        if (stacks.isEmpty()) {
+            fail("counter-c made no host call to read the call stack in");
+        }
+        for (var stack : stacks) {
+            if (stack == null) {
+                fail("couldn't read the call stack");
+            }
+            // the guest's own functions come after the imported ones
+            if (stack.length == 0 || Arrays.stream(stack).anyMatch(index -> index < hostFunctions.length)) {
+                fail("read a call stack without the guest's functions: " + Arrays.toString(stack));
+            }
+        }
+        System.out.println("Read " + stacks.size() + " call stacks, the deepest with " + stacks.stream().mapToInt(stack -> stack.length).max().orElseThrow() + " frames");
+    }
+
+    private static Value zero(ValueType type) {
+        return switch (type) {
+            case I64 -> Value.i64(0);
+            case F32 -> Value.f32(0);
+            case F64 -> Value.f64(0);
+            default -> Value.i32(0);
+        };
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED, GuestProfiler can't profile with this Chicory version: " + message);
+        System.exit(1);
+    }
+}
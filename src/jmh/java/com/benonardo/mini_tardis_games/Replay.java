@@ -0,0 +1,156 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a session recorded with {@code /minitardisgames record} as fast as possible, checks that every frame comes
+ * out the same as when it was recorded and reports how long each export took. Running it on two builds shows whether
+ * a game or the host got slower on a real session.
+ * <p>
+ * Arguments: the {@code .mtgtrace} file, then optionally the game's {@code .wasm.gz} or the name of a sample game,
+ * by default the sample game the trace was recorded from. Like in a datapack, the game's {@code .json} metadata and
+ * {@code .assets} directory are read from next to its {@code .wasm.gz}.
+ */
+public final class Replay {
+
+    private static final String GAME_SUFFIX = ".wasm.gz";
+
+    private Replay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Replay <trace.mtgtrace> [game.wasm.gz | sample game]");
+            System.exit(2);
+        }
+        try (var player = SessionTrace.Player.open(Path.of(args[0]))) {
+            var game = args.length > 1 ? args[1] : player.getGameId().getPath();
+            var file = game.endsWith(GAME_SUFFIX) ? Path.of(game) : SampleGames.file(game);
+            var data = Files.readAllBytes(file);
+            var hash = hash(data);
+            if (!player.getGameHash().isEmpty() && !player.getGameHash().equals(hash)) {
+                System.out.println("Warning: " + game + " is not the version of " + player.getGameId() + " the trace was recorded with");
+            }
+            var name = file.getFileName().toString();
+            name = name.substring(0, name.length() - GAME_SUFFIX.length());
+            var metadata = readMetadata(player.getGameId(), file.resolveSibling(name + ".json"));
+            if (!metadata.equals(player.getMetadata())) {
+                System.out.println("Warning: the metadata of " + game + " differs from the recorded " + player.getMetadata());
+            }
+            var assets = readAssets(file.resolveSibling(name + ".assets"));
+            var module = ModuleCache.parse(player.getGameId(), data);
+            replay(player, module, metadata, assets);
+        }
+    }
+
+    private static GameMetadata readMetadata(Identifier gameId, Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return GameMetadata.EMPTY;
+        }
+        try (var reader = Files.newBufferedReader(file)) {
+            var metadata = GameManager.readMetadata(gameId, reader);
+            return metadata == null ? GameMetadata.EMPTY : metadata;
+        }
+    }
+
+    private static GameAssets readAssets(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return GameAssets.EMPTY;
+        }
+        var assets = new HashMap<String, byte[]>();
+        List<Path> files;
+        try (var walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (var file : files) {
+            // asset paths use slashes like resource paths, whatever the platform
+            var name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            assets.put(name, Files.readAllBytes(file));
+        }
+        return GameAssets.of(assets);
+    }
+
+    private static void replay(SessionTrace.Player player, Module module, GameMetadata metadata, GameAssets assets) {
+        var first = player.readCall();
+        if (first.export() != GameMetrics.Export.ALLOC_DATA) {
+            throw new SessionTrace.DivergedException("Trace starts with " + first.export().getName() + " instead of mtg_alloc_data");
+        }
+        var screen = new HeadlessScreen(0);
+        var canvas = new CanvasImage(SampleGames.WIDTH, SampleGames.HEIGHT);
+        var calls = new EnumMap<GameMetrics.Export, long[]>(GameMetrics.Export.class);
+
+        var start = System.nanoTime();
+        var view = new WasmBackedAppView(new CustomApp(player.getGameId()), module, metadata, assets, player);
+        calls.put(GameMetrics.Export.ALLOC_DATA, new long[]{1, System.nanoTime() - start});
+
+        var frames = 0;
+        var mismatches = 0;
+        var firstMismatch = -1;
+        var lastFrameMatched = true;
+        try {
+            loop:
+            while (true) {
+                switch (player.peek()) {
+                    case SessionTrace.CALL -> {
+                        var call = player.readCall();
+                        var drawing = call.export() == GameMetrics.Export.DRAW || call.export() == GameMetrics.Export.DRAW_BACKGROUND;
+                        var callStart = System.nanoTime();
+                        view.replay(call, screen, drawing ? canvas : null);
+                        var stats = calls.computeIfAbsent(call.export(), ignored -> new long[2]);
+                        stats[0]++;
+                        stats[1] += System.nanoTime() - callStart;
+                    }
+                    case SessionTrace.INPUT -> view.replayInput(player.readInput());
+                    case SessionTrace.FRAME -> {
+                        lastFrameMatched = player.readFrame() == SessionTrace.checksum(canvas);
+                        if (!lastFrameMatched) {
+                            if (firstMismatch == -1) {
+                                firstMismatch = frames;
+                            }
+                            mismatches++;
+                        }
+                        frames++;
+                    }
+                    case SessionTrace.END -> {
+                        break loop;
+                    }
+                    default -> throw new SessionTrace.DivergedException("Unexpected trace entry " + player.peek() + " between calls");
+                }
+            }
+        } catch (SessionTrace.DivergedException e) {
+            System.out.println("Replay diverged after " + frames + " frames: " + e.getMessage());
+        }
+        var total = System.nanoTime() - start;
+
+        System.out.printf(Locale.ROOT, "Replayed %s in %.1f ms%n", player.getGameId(), total / 1e6);
+        calls.forEach((export, stats) -> System.out.printf(Locale.ROOT, "  %-20s %8d calls %10.1f ms %10.2f us/call%n",
+                export.getName(), stats[0], stats[1] / 1e6, stats[1] / 1e3 / stats[0]));
+        if (mismatches == 0) {
+            System.out.println("All " + frames + " frames match");
+        } else {
+            System.out.println(mismatches + " of " + frames + " frames differ, the first is frame " + firstMismatch
+                    + (lastFrameMatched ? ", the final frame matches" : ", the final frame differs"));
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
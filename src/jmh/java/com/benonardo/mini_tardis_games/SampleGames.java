@@ -0,0 +1,57 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+
+/**
+ * Loads the games bundled with the mod straight from the classpath.
+ */
+public final class SampleGames {
+
+    public static final int WIDTH = 128;
+    public static final int HEIGHT = 96;
+    private static final String DIRECTORY = "/data/mini_tardis_games/mini_tardis_games/";
+
+    private SampleGames() {
+    }
+
+    public static byte[] read(String name) {
+        try (var stream = SampleGames.class.getResourceAsStream(DIRECTORY + name + ".wasm.gz")) {
+            if (stream == null) {
+                throw new IllegalArgumentException("Unknown sample game " + name);
+            }
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the sample game's {@code .wasm.gz}, as long as the resources are a directory like when run from Gradle
+     */
+    public static Path file(String name) {
+        var url = SampleGames.class.getResource(DIRECTORY + name + ".wasm.gz");
+        if (url == null) {
+            throw new IllegalArgumentException("Unknown sample game " + name);
+        }
+        try {
+            return Path.of(url.toURI());
+        } catch (URISyntaxException | FileSystemNotFoundException e) {
+            throw new IllegalStateException("Sample game " + name + " is not a file", e);
+        }
+    }
+
+    public static Module parse(String name) {
+        return ModuleCache.parse(id(name), read(name));
+    }
+
+    public static Identifier id(String name) {
+        return new Identifier(MiniTardisGames.MOD_ID, name);
+    }
+}
@@ -0,0 +1,70 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole frames and instantiation of the sample games, without a server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WasmBackedAppViewBenchmark {
+
+    @Param({"counter", "counter-c", "bad_apple"})
+    public String game;
+
+    private Module module;
+    private WasmBackedAppView view;
+    private HeadlessScreen screen;
+    private CanvasImage canvas;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.module = SampleGames.parse(this.game);
+        this.screen = new HeadlessScreen(0);
+        this.canvas = new CanvasImage(SampleGames.WIDTH, SampleGames.HEIGHT);
+        this.view = new WasmBackedAppView(new CustomApp(SampleGames.id(this.game)), this.module, GameMetadata.EMPTY, GameAssets.EMPTY);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() {
+        // bad apple closes itself after its last frame, restart it for every iteration
+        this.screen.reopen();
+        this.view.screenOpen(this.screen);
+    }
+
+    @Benchmark
+    public CanvasImage drawFrame() {
+        this.view.drawBackground(this.screen, this.canvas);
+        this.view.draw(this.screen, this.canvas);
+        this.view.screenTick(this.screen);
+        return this.canvas;
+    }
+
+    @Benchmark
+    public WasmBackedAppView instantiate() {
+        return new WasmBackedAppView(new CustomApp(SampleGames.id(this.game)), this.module, GameMetadata.EMPTY, GameAssets.EMPTY);
+    }
+
+    /**
+     * Opening and closing a screen, which after the first invocation only restores a pooled instance.
+     */
+    @Benchmark
+    public WasmBackedAppView openPooled() {
+        var view = new WasmBackedAppView(new CustomApp(SampleGames.id(this.game)), this.module, GameMetadata.EMPTY, GameAssets.EMPTY);
+        view.screenClose(this.screen);
+        return view;
+    }
+
+    @Benchmark
+    public Module parse() {
+        return SampleGames.parse(this.game);
+    }
+}
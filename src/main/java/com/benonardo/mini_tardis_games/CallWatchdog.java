@@ -0,0 +1,157 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.wasm.types.Value;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Runs calls into games on runner threads while the calling thread waits for them, so that a call can be abandoned
+ * once its time is up. The interpreter neither checks a deadline nor reacts to interrupts, a guest looping without
+ * calling a host function would otherwise hold the server thread forever.
+ * <p>
+ * The runner of an abandoned call is stopped and never runs another call. On a JVM that no longer supports stopping
+ * threads, it keeps spinning until the guest's loop ends, but the thread that made the call carries on either way.
+ */
+final class CallWatchdog {
+
+    private static final long RUNNER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // the caller has nothing else to do, and waking a parked thread takes tens of microseconds, longer than most calls,
+    // but on a single processor spinning only keeps the runner from running
+    private static final boolean SPIN = Runtime.getRuntime().availableProcessors() > 1;
+    private static final long CALLER_SPIN_NANOS = SPIN ? TimeUnit.MICROSECONDS.toNanos(200) : 0;
+    // a runner usually gets its next call within the same tick
+    private static final long RUNNER_SPIN_NANOS = SPIN ? TimeUnit.MICROSECONDS.toNanos(50) : 0;
+    private static final Deque<Runner> IDLE_RUNNERS = new ConcurrentLinkedDeque<>();
+    private static final AtomicInteger RUNNER_COUNTER = new AtomicInteger();
+    private static volatile boolean stopUnsupported;
+
+    private CallWatchdog() {
+    }
+
+    /**
+     * @throws TimeoutException if the call didn't return within {@code timeoutNanos} and was abandoned
+     */
+    static Value[] run(Supplier<Value[]> function, long timeoutNanos) throws TimeoutException {
+        var start = System.nanoTime();
+        var deadline = start + timeoutNanos;
+        var call = new Call(function, Thread.currentThread());
+        var runner = IDLE_RUNNERS.pollFirst();
+        if (runner == null) {
+            runner = new Runner(call);
+            runner.start();
+        } else {
+            runner.call = call;
+            LockSupport.unpark(runner);
+        }
+        var spinUntil = start + Math.min(CALLER_SPIN_NANOS, timeoutNanos);
+        while (call.state.get() == Call.RUNNING && System.nanoTime() - spinUntil < 0) {
+            Thread.onSpinWait();
+        }
+        while (call.state.get() == Call.RUNNING) {
+            var remaining = deadline - System.nanoTime();
+            if (remaining <= 0 && call.state.compareAndSet(Call.RUNNING, Call.ABANDONED)) {
+                stop(runner);
+                throw new TimeoutException();
+            }
+            LockSupport.parkNanos(call, Math.max(remaining, 0));
+        }
+        if (call.failure instanceof RuntimeException exception) {
+            throw exception;
+        } else if (call.failure instanceof Error error) {
+            throw error;
+        }
+        return call.result;
+    }
+
+    @SuppressWarnings({"deprecation", "removal"})
+    private static void stop(Thread runner) {
+        if (stopUnsupported) {
+            return;
+        }
+        try {
+            runner.stop();
+        } catch (UnsupportedOperationException e) {
+            stopUnsupported = true;
+            MiniTardisGames.LOGGER.warn("This JVM can't stop threads, abandoned guest calls keep running until they return");
+        }
+    }
+
+    private static final class Call {
+
+        private static final int RUNNING = 0;
+        private static final int DONE = 1;
+        private static final int ABANDONED = 2;
+
+        private final Supplier<Value[]> function;
+        private final Thread caller;
+        // whoever moves the call out of RUNNING owns it, so a runner that finished too late can't be stopped in its next call
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        // written before the state is set to DONE
+        private Value[] result;
+        private Throwable failure;
+
+        private Call(Supplier<Value[]> function, Thread caller) {
+            this.function = function;
+            this.caller = caller;
+        }
+    }
+
+    private static final class Runner extends Thread {
+
+        private volatile Call call;
+
+        private Runner(Call call) {
+            super("Mini Tardis Games Call Runner #" + RUNNER_COUNTER.incrementAndGet());
+            setDaemon(true);
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                var call = awaitCall();
+                if (call == null) {
+                    return;
+                }
+                try {
+                    call.result = call.function.get();
+                } catch (Throwable throwable) {
+                    call.failure = throwable;
+                }
+                if (!call.state.compareAndSet(Call.RUNNING, Call.DONE)) {
+                    // abandoned, a stop may still be on its way
+                    return;
+                }
+                LockSupport.unpark(call.caller);
+                this.call = null;
+                IDLE_RUNNERS.addFirst(this);
+            }
+        }
+
+        /**
+         * @return the next call, null once the runner has been idle for too long and left the idle runners
+         */
+        private Call awaitCall() {
+            var idleSince = System.nanoTime();
+            Call call;
+            while ((call = this.call) == null && System.nanoTime() - idleSince < RUNNER_SPIN_NANOS) {
+                Thread.onSpinWait();
+            }
+            while ((call = this.call) == null) {
+                var idle = System.nanoTime() - idleSince;
+                // a runner that was already taken out of the idle runners is about to get a call
+                if (idle >= RUNNER_IDLE_NANOS && IDLE_RUNNERS.remove(this)) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, Math.max(RUNNER_IDLE_NANOS - idle, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+            return call;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.benonardo.mini_tardis_games;
 
-import com.dylibso.chicory.runtime.Module;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import dev.enjarai.minitardis.block.console.ScreenBlockEntity;
@@ -17,36 +16,30 @@ import net.minecraft.util.ClickType;
 import net.minecraft.util.Identifier;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.zip.GZIPInputStream;
-
 public final class CustomApp implements ScreenApp {
 
     private static final Identifier INVALID_GAME = new Identifier("mini_tardis_games", "missingno");
-    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.wrap(new byte[0]);
     public static final Codec<CustomApp> CODEC = RecordCodecBuilder.create(instance -> instance.group(
             Identifier.CODEC.fieldOf("app_id").forGetter(CustomApp::getAppId),
-            Codec.BYTE_BUFFER.fieldOf("persistent_data").forGetter(CustomApp::getPersistentData)
+            PersistentData.MAP_CODEC.forGetter(CustomApp::getPersistentData)
     ).apply(instance, CustomApp::new));
     public static final ScreenAppType<CustomApp> TYPE = new ScreenAppType<>(CODEC, CustomApp::new, false);
     @NotNull
     private final Identifier appId;
     @NotNull
-    private ByteBuffer persistentData;
+    private volatile PersistentData persistentData;
 
-    public CustomApp(@NotNull Identifier appId, @NotNull ByteBuffer persistentData) {
+    public CustomApp(@NotNull Identifier appId, @NotNull PersistentData persistentData) {
         this.appId = appId;
         this.persistentData = persistentData;
     }
 
     public CustomApp(@NotNull Identifier appId) {
-        this(appId, EMPTY_BUFFER);
+        this(appId, PersistentData.EMPTY);
     }
 
     private CustomApp() {
-        this(INVALID_GAME, EMPTY_BUFFER);
+        this(INVALID_GAME, PersistentData.EMPTY);
     }
 
     @NotNull
@@ -54,18 +47,18 @@ public final class CustomApp implements ScreenApp {
         return this.appId;
     }
 
-    public void setPersistentData(@NotNull ByteBuffer value) {
+    public void setPersistentData(@NotNull PersistentData value) {
         this.persistentData = value;
     }
 
     @NotNull
-    public ByteBuffer getPersistentData() {
+    public PersistentData getPersistentData() {
         return this.persistentData;
     }
 
     @Override
     public AppView getView(TardisControl controls) {
-        var game = GameManager.GAMES.get(appId);
+        var game = GameManager.getGame(appId);
         if (game == null) {
             return new AppView() {
                 @Override
@@ -84,11 +77,7 @@ public final class CustomApp implements ScreenApp {
                 }
             };
         } else {
-            try (var stream = new GZIPInputStream(new ByteArrayInputStream(game))) {
-                return new WasmBackedAppView(this, Module.builder(stream.readAllBytes()).build());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            return new WasmBackedAppView(this, ModuleCache.get(appId, game), game.metadata(), game.assets());
         }
     }
 
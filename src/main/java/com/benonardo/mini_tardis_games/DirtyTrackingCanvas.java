@@ -0,0 +1,70 @@
+package com.benonardo.mini_tardis_games;
+
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Forwards to another canvas, but drops writes that wouldn't change the pixel. A game that redraws the same picture
+ * every tick then leaves the screen's canvas untouched, so no map update has to be sent to the players around it.
+ */
+final class DirtyTrackingCanvas implements DrawableCanvas {
+
+    @Nullable
+    private DrawableCanvas target;
+    private int pixelsSent;
+    private int pixelsSkipped;
+
+    /**
+     * Starts tracking writes to {@code target}, forgetting about the previous target.
+     */
+    DirtyTrackingCanvas wrap(DrawableCanvas target) {
+        this.target = target;
+        this.pixelsSent = 0;
+        this.pixelsSkipped = 0;
+        return this;
+    }
+
+    int getPixelsSent() {
+        return this.pixelsSent;
+    }
+
+    int getPixelsSkipped() {
+        return this.pixelsSkipped;
+    }
+
+    private DrawableCanvas target() {
+        if (this.target == null) {
+            throw new IllegalStateException("Used a tracking canvas before wrapping a canvas");
+        }
+        return this.target;
+    }
+
+    @Override
+    public byte getRaw(int x, int y) {
+        return target().getRaw(x, y);
+    }
+
+    @Override
+    public void setRaw(int x, int y, byte color) {
+        var target = target();
+        if (x < 0 || y < 0 || x >= target.getWidth() || y >= target.getHeight()) {
+            return;
+        }
+        if (target.getRaw(x, y) == color) {
+            this.pixelsSkipped++;
+        } else {
+            target.setRaw(x, y, color);
+            this.pixelsSent++;
+        }
+    }
+
+    @Override
+    public int getHeight() {
+        return target().getHeight();
+    }
+
+    @Override
+    public int getWidth() {
+        return target().getWidth();
+    }
+}
@@ -0,0 +1,137 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Memory;
+import dev.enjarai.minitardis.canvas.TardisCanvasUtils;
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+import eu.pb4.mapcanvas.api.font.DefaultFonts;
+import eu.pb4.mapcanvas.api.utils.CanvasUtils;
+
+/**
+ * Decodes a buffer of draw commands written by a guest into its linear memory and executes them against a canvas.
+ * <p>
+ * The buffer starts with the little endian {@code i32} format {@link #VERSION}, followed by commands.
+ * Every command is an {@code i32} opcode followed by its {@code i32} arguments.
+ * Text, sprite names and blitted pixels are stored inline after their arguments, padded to a multiple of 4 bytes,
+ * so the buffer does not reference any other guest memory.
+ * <ul>
+ *     <li>{@link #SET_PIXEL}: x, y, raw color</li>
+ *     <li>{@link #FILL_RECT}: x, y, width, height, raw color</li>
+ *     <li>{@link #LINE}: x0, y0, x1, y1, raw color</li>
+ *     <li>{@link #TEXT}: x, y, size, argb, text length, UTF-8 text</li>
+ *     <li>{@link #INBUILT_SPRITE}: x, y, name length, UTF-8 name</li>
+ *     <li>{@link #BLIT_RAW}: x, y, width, height, raw colors row by row</li>
+ * </ul>
+ */
+public final class DrawCommands {
+
+    public static final int VERSION = 1;
+
+    public static final int SET_PIXEL = 1;
+    public static final int FILL_RECT = 2;
+    public static final int LINE = 3;
+    public static final int TEXT = 4;
+    public static final int INBUILT_SPRITE = 5;
+    public static final int BLIT_RAW = 6;
+
+    private DrawCommands() {
+    }
+
+    public static void execute(DrawableCanvas canvas, Memory memory, int address, int length) {
+        if (length < Integer.BYTES) {
+            throw new IllegalArgumentException("Draw command buffer of length " + length + " is missing its version");
+        }
+        var version = readI32(memory, address);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported draw command buffer version " + version + ", expected " + VERSION);
+        }
+        var end = address + length;
+        var position = address + Integer.BYTES;
+        while (position < end) {
+            var opcode = readI32(memory, position);
+            var arguments = position + Integer.BYTES;
+            switch (opcode) {
+                case SET_PIXEL -> {
+                    checkLength(position, end, 3);
+                    var x = readI32(memory, arguments);
+                    var y = readI32(memory, arguments + 4);
+                    var color = WasmCanvasUtils.toRawColor(readI32(memory, arguments + 8));
+                    if (x >= 0 && y >= 0 && x < canvas.getWidth() && y < canvas.getHeight()) {
+                        canvas.setRaw(x, y, color);
+                    }
+                    position = arguments + 12;
+                }
+                case FILL_RECT -> {
+                    checkLength(position, end, 5);
+                    WasmCanvasUtils.fillRaw(canvas, readI32(memory, arguments), readI32(memory, arguments + 4),
+                            readI32(memory, arguments + 8), readI32(memory, arguments + 12),
+                            WasmCanvasUtils.toRawColor(readI32(memory, arguments + 16)));
+                    position = arguments + 20;
+                }
+                case LINE -> {
+                    checkLength(position, end, 5);
+                    WasmCanvasUtils.lineRaw(canvas, readI32(memory, arguments), readI32(memory, arguments + 4),
+                            readI32(memory, arguments + 8), readI32(memory, arguments + 12),
+                            WasmCanvasUtils.toRawColor(readI32(memory, arguments + 16)));
+                    position = arguments + 20;
+                }
+                case TEXT -> {
+                    checkLength(position, end, 5);
+                    var textLength = readI32(memory, arguments + 16);
+                    var textAddress = arguments + 20;
+                    checkInline(textAddress, textLength, end);
+                    var text = memory.readString(textAddress, textLength);
+                    GlyphRunCache.drawText(canvas, DefaultFonts.VANILLA, text, readI32(memory, arguments), readI32(memory, arguments + 4),
+                            readI32(memory, arguments + 8), MapColorCache.fromArgb(readI32(memory, arguments + 12)));
+                    position = textAddress + padded(textLength);
+                }
+                case INBUILT_SPRITE -> {
+                    checkLength(position, end, 3);
+                    var nameLength = readI32(memory, arguments + 8);
+                    var nameAddress = arguments + 12;
+                    checkInline(nameAddress, nameLength, end);
+                    var name = memory.readString(nameAddress, nameLength);
+                    CanvasUtils.draw(canvas, readI32(memory, arguments), readI32(memory, arguments + 4), TardisCanvasUtils.getSprite(name));
+                    position = nameAddress + padded(nameLength);
+                }
+                case BLIT_RAW -> {
+                    checkLength(position, end, 4);
+                    var width = readI32(memory, arguments + 8);
+                    var height = readI32(memory, arguments + 12);
+                    var pixelsAddress = arguments + 16;
+                    var pixelsLength = (long) width * height;
+                    if (pixelsLength > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Blit command of size " + width + "x" + height + " is too large");
+                    }
+                    checkInline(pixelsAddress, (int) pixelsLength, end);
+                    WasmCanvasUtils.blitRaw(canvas, memory, readI32(memory, arguments), readI32(memory, arguments + 4),
+                            width, height, pixelsAddress, width);
+                    position = pixelsAddress + padded((int) pixelsLength);
+                }
+                default -> throw new IllegalArgumentException("Unknown draw command " + opcode + " at offset " + (position - address));
+            }
+        }
+    }
+
+    private static int readI32(Memory memory, int address) {
+        return (memory.read(address) & 0xFF)
+                | (memory.read(address + 1) & 0xFF) << 8
+                | (memory.read(address + 2) & 0xFF) << 16
+                | (memory.read(address + 3) & 0xFF) << 24;
+    }
+
+    private static void checkLength(int position, int end, int arguments) {
+        if (position + (1 + arguments) * Integer.BYTES > end) {
+            throw new IllegalArgumentException("Draw command buffer ends in the middle of a command");
+        }
+    }
+
+    private static void checkInline(int address, int length, int end) {
+        if (length < 0 || address + padded(length) > end) {
+            throw new IllegalArgumentException("Draw command buffer ends in the middle of inline data");
+        }
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+}
@@ -0,0 +1,108 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.wasm.types.Value;
+import net.minecraft.util.Identifier;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the wall clock time and the number of host function calls of a single call into a game. A call exceeding
+ * either is aborted and the game closed.
+ * <p>
+ * Calls with a time limit run through the {@link CallWatchdog}, which abandons them once the time is up, even if the
+ * guest never calls a host function. Calls that do are also checked whenever they call one, which stops them before
+ * the watchdog has to.
+ */
+public final class ExecutionBudget {
+
+    private static final Map<Identifier, LongAdder> OVERRUNS = new ConcurrentHashMap<>();
+    // checking the clock on every host call would be a noticeable part of cheap calls like set_raw
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    private final Identifier gameId;
+    private final long maxCallNanos;
+    private final long maxHostCalls;
+    private long startTime;
+    private long hostCalls;
+
+    public ExecutionBudget(Identifier gameId, long maxCallMillis, long maxHostCalls) {
+        this.gameId = gameId;
+        this.maxCallNanos = maxCallMillis <= 0 ? Long.MAX_VALUE : maxCallMillis * 1_000_000;
+        this.maxHostCalls = maxHostCalls <= 0 ? Long.MAX_VALUE : maxHostCalls;
+    }
+
+    /**
+     * Calls {@code function} within the budget.
+     *
+     * @throws ExceededException if the call took too long or made too many host calls, see
+     *                           {@link ExceededException#isCallAbandoned()}
+     */
+    public Value[] call(ExportFunction function, Value[] args) {
+        start();
+        if (this.maxCallNanos == Long.MAX_VALUE) {
+            return function.apply(args);
+        }
+        Value[] result;
+        try {
+            result = CallWatchdog.run(() -> function.apply(args), this.maxCallNanos);
+        } catch (TimeoutException e) {
+            throw overrun("took longer than " + this.maxCallNanos / 1_000_000 + "ms", true);
+        }
+        checkDeadline();
+        return result;
+    }
+
+    public void start() {
+        this.hostCalls = 0;
+        this.startTime = System.nanoTime();
+    }
+
+    public void onHostCall() {
+        if (++this.hostCalls > this.maxHostCalls) {
+            throw overrun("made more than " + this.maxHostCalls + " host calls", false);
+        }
+        if (this.hostCalls % CLOCK_CHECK_INTERVAL == 0) {
+            checkDeadline();
+        }
+    }
+
+    private void checkDeadline() {
+        if (System.nanoTime() - this.startTime > this.maxCallNanos) {
+            throw overrun("took longer than " + this.maxCallNanos / 1_000_000 + "ms", false);
+        }
+    }
+
+    private ExceededException overrun(String reason, boolean callAbandoned) {
+        OVERRUNS.computeIfAbsent(this.gameId, id -> new LongAdder()).increment();
+        return new ExceededException("Game " + this.gameId + " " + reason, callAbandoned);
+    }
+
+    public static Map<Identifier, Long> getOverruns() {
+        var overruns = new TreeMap<Identifier, Long>();
+        OVERRUNS.forEach((id, count) -> overruns.put(id, count.sum()));
+        return overruns;
+    }
+
+    public static final class ExceededException extends RuntimeException {
+
+        private final boolean callAbandoned;
+
+        private ExceededException(String message, boolean callAbandoned) {
+            super(message);
+            this.callAbandoned = callAbandoned;
+        }
+
+        /**
+         * @return whether the call was left running on its runner thread, in which case its guest must not be called
+         * again
+         */
+        public boolean isCallAbandoned() {
+            return this.callAbandoned;
+        }
+    }
+}
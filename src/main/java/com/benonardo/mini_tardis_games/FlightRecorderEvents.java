@@ -0,0 +1,60 @@
+package com.benonardo.mini_tardis_games;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder events for game execution. They are disabled by default, enable them in a recording with
+ * e.g. {@code -XX:StartFlightRecording:settings=profile,+mini_tardis_games.ExportCall#enabled=true} or through JMC.
+ * <p>
+ * Events are created, begun and only filled in if {@link Event#shouldCommit()} returns true, which lets the JIT
+ * remove them entirely while they aren't recorded.
+ */
+public final class FlightRecorderEvents {
+
+    private static final String CATEGORY = "Mini Tardis Games";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name("mini_tardis_games.ExportCall")
+    @Label("WASM Export Call")
+    @Description("A call from the server into an export of a game")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ExportCall extends Event {
+
+        @Label("Game")
+        public String game;
+        @Label("Export")
+        public String export;
+    }
+
+    @Name("mini_tardis_games.HostCall")
+    @Label("WASM Host Call")
+    @Description("A call from a game into one of the more expensive host functions")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class HostCall extends Event {
+
+        @Label("Game")
+        public String game;
+        @Label("Import")
+        public String hostFunction;
+    }
+
+    @Name("mini_tardis_games.ModuleLoad")
+    @Label("WASM Module Load")
+    @Description("Decoding, instantiating or restoring the module of a game")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ModuleLoad extends Event {
+
+        @Label("Game")
+        public String game;
+        @Label("Phase")
+        public String phase;
+    }
+}
@@ -0,0 +1,87 @@
+package com.benonardo.mini_tardis_games;
+
+/**
+ * Decides which of the draws and ticks Mini TARDIS asks a view for actually reach the game.
+ * <p>
+ * Games are drawn every tick up to their {@code fps_cap}. When the server's average tick time goes above
+ * {@link MiniTardisGamesConfig#framePacingMspt()}, frames and ticks are thinned out in proportion to the overload,
+ * and games whose frames take long are thinned out twice as much. Clicks are never held back.
+ */
+final class FramePacer {
+
+    static final int TICKS_PER_SECOND = 20;
+    private static final long EXPENSIVE_FRAME_NANOS = 2_000_000;
+    private static volatile float averageTickMillis;
+
+    private final int fpsCap;
+    // an exponential moving average, only used as a rough measure so races between threads don't matter
+    private volatile long frameNanos;
+    private int frameCredit;
+    private int tickCredit;
+
+    FramePacer(int fpsCap) {
+        this.fpsCap = fpsCap <= 0 ? TICKS_PER_SECOND : Math.min(fpsCap, TICKS_PER_SECOND);
+    }
+
+    static void onServerTick(float averageTickMillis) {
+        FramePacer.averageTickMillis = averageTickMillis;
+    }
+
+    void recordFrame(long nanos) {
+        var previous = this.frameNanos;
+        this.frameNanos = previous == 0 ? nanos : previous + (nanos - previous) / 8;
+    }
+
+    private int throttle(int rate) {
+        var threshold = MiniTardisGames.getConfig().framePacingMspt();
+        var tickMillis = averageTickMillis;
+        if (threshold <= 0 || tickMillis <= threshold) {
+            return rate;
+        }
+        rate = (int) (rate * threshold / tickMillis);
+        if (this.frameNanos > EXPENSIVE_FRAME_NANOS) {
+            rate /= 2;
+        }
+        return Math.max(1, rate);
+    }
+
+    int getTargetFps() {
+        return throttle(this.fpsCap);
+    }
+
+    int getTargetTps() {
+        return throttle(TICKS_PER_SECOND);
+    }
+
+    boolean isThrottled() {
+        return getTargetFps() < TICKS_PER_SECOND;
+    }
+
+    /**
+     * @return whether the next call to {@link #nextFrame()} will return true
+     */
+    boolean isFrameDue() {
+        return this.frameCredit + getTargetFps() >= TICKS_PER_SECOND;
+    }
+
+    /**
+     * Called once per draw Mini TARDIS asks for, spreads the target frame rate evenly over the ticks of a second.
+     */
+    boolean nextFrame() {
+        this.frameCredit += getTargetFps();
+        if (this.frameCredit >= TICKS_PER_SECOND) {
+            this.frameCredit -= TICKS_PER_SECOND;
+            return true;
+        }
+        return false;
+    }
+
+    boolean nextTick() {
+        this.tickCredit += getTargetTps();
+        if (this.tickCredit >= TICKS_PER_SECOND) {
+            this.tickCredit -= TICKS_PER_SECOND;
+            return true;
+        }
+        return false;
+    }
+}
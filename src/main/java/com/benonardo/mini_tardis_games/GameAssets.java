@@ -0,0 +1,165 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Memory;
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The read-only files a game ships in a {@code <game>.assets} directory next to its {@code .wasm.gz}, like the frames
+ * of a video. They are read once per reload and shared by every screen running the game, instead of being embedded in
+ * the module and copied into the memory of each instance.
+ * <p>
+ * Guests open an asset by its path relative to that directory and get a handle that is valid until the next reload.
+ * Files ending in {@code .gz} are opened without that suffix. They stay compressed until a guest opens them for the
+ * first time, so large but repetitive assets neither bloat the datapack nor the heap of a server whose players never
+ * run the game.
+ */
+public final class GameAssets {
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    public static final GameAssets EMPTY = new GameAssets(new String[0], new byte[0][], new boolean[0]);
+
+    private final String[] names;
+    // the files as shipped, dropped once inflated
+    private final byte[][] files;
+    // inflated on first open
+    private final AtomicReferenceArray<byte[]> data;
+
+    private GameAssets(String[] names, byte[][] files, boolean[] compressed) {
+        this.names = names;
+        this.files = files;
+        this.data = new AtomicReferenceArray<>(names.length);
+        for (var i = 0; i < names.length; i++) {
+            if (!compressed[i]) {
+                this.data.set(i, files[i]);
+            }
+        }
+    }
+
+    /**
+     * @param files the contents of the asset files by their path, gzipped if it ends in {@code .gz}
+     */
+    @NotNull
+    public static GameAssets of(@NotNull Map<String, byte[]> files) {
+        if (files.isEmpty()) {
+            return EMPTY;
+        }
+        var paths = files.keySet().toArray(String[]::new);
+        Arrays.sort(paths, (a, b) -> nameOf(a).compareTo(nameOf(b)));
+        var names = new String[paths.length];
+        var contents = new byte[paths.length][];
+        var compressed = new boolean[paths.length];
+        for (var i = 0; i < paths.length; i++) {
+            names[i] = nameOf(paths[i]);
+            if (i > 0 && names[i].equals(names[i - 1])) {
+                throw new IllegalArgumentException("Asset " + names[i] + " exists both with and without " + GZIP_SUFFIX);
+            }
+            contents[i] = files.get(paths[i]);
+            compressed[i] = paths[i].endsWith(GZIP_SUFFIX);
+        }
+        return new GameAssets(names, contents, compressed);
+    }
+
+    private static String nameOf(String path) {
+        return path.endsWith(GZIP_SUFFIX) ? path.substring(0, path.length() - GZIP_SUFFIX.length()) : path;
+    }
+
+    /**
+     * Opens the asset called {@code name}, inflating it if this is the first time any guest opens it.
+     *
+     * @return the handle of the asset, or -1 if the game has no such asset
+     */
+    public int find(@NotNull String name) {
+        var index = Arrays.binarySearch(this.names, name);
+        if (index < 0) {
+            return -1;
+        }
+        get(index);
+        return index;
+    }
+
+    public int length(int handle) {
+        return get(handle).length;
+    }
+
+    public int count() {
+        return this.names.length;
+    }
+
+    /**
+     * Copies up to {@code length} bytes starting at {@code offset} of an asset into guest memory.
+     *
+     * @return the number of bytes copied, less than {@code length} at the end of the asset
+     */
+    public int read(int handle, int offset, @NotNull Memory memory, int address, int length) {
+        var asset = get(handle);
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Asset read at " + offset + " of " + length + " bytes is negative");
+        }
+        var count = Math.min(length, Math.max(0, asset.length - offset));
+        if (count > 0) {
+            memory.write(address, asset, offset, count);
+        }
+        return count;
+    }
+
+    /**
+     * Copies a rectangle of raw map colors starting at {@code offset} of an asset onto the canvas, clipping it to the
+     * canvas bounds. Rows start {@code stride} bytes apart, like {@link WasmCanvasUtils#blitRaw}.
+     */
+    public void blitRaw(int handle, int offset, @NotNull DrawableCanvas canvas, int x, int y, int width, int height, int stride) {
+        var asset = get(handle);
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Blit size " + width + "x" + height + " is negative");
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("Blit stride " + stride + " is smaller than its width " + width);
+        }
+        if (height > 0 && (offset < 0 || offset + (long) (height - 1) * stride + width > asset.length)) {
+            throw new IllegalArgumentException("Blit at " + offset + " reaches past the end of asset " + this.names[handle]);
+        }
+        // in long, so that coordinates near the ends of the int range can't wrap around
+        var startX = (int) Math.min(width, Math.max(0, -(long) x));
+        var startY = (int) Math.min(height, Math.max(0, -(long) y));
+        var endX = (int) Math.min(width, (long) canvas.getWidth() - x);
+        var endY = (int) Math.min(height, (long) canvas.getHeight() - y);
+        for (var row = startY; row < endY; row++) {
+            var rowOffset = offset + row * stride;
+            for (var column = startX; column < endX; column++) {
+                canvas.setRaw(x + column, y + row, asset[rowOffset + column]);
+            }
+        }
+    }
+
+    private byte[] get(int handle) {
+        if (handle < 0 || handle >= this.names.length) {
+            throw new IllegalArgumentException("Unknown asset handle " + handle);
+        }
+        var asset = this.data.get(handle);
+        return asset != null ? asset : inflate(handle);
+    }
+
+    private synchronized byte[] inflate(int handle) {
+        var asset = this.data.get(handle);
+        if (asset != null) {
+            return asset;
+        }
+        try (var stream = new GZIPInputStream(new ByteArrayInputStream(this.files[handle]))) {
+            asset = stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't inflate asset " + this.names[handle], e);
+        }
+        this.data.set(handle, asset);
+        this.files[handle] = null;
+        return asset;
+    }
+}
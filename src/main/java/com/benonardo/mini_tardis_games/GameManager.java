@@ -1,18 +1,50 @@
 package com.benonardo.mini_tardis_games;
 
-import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
+import com.dylibso.chicory.runtime.Module;
+import com.google.gson.JsonParser;
+import com.mojang.serialization.JsonOps;
+import net.fabricmc.fabric.api.resource.SimpleResourceReloadListener;
+import net.minecraft.resource.Resource;
 import net.minecraft.resource.ResourceManager;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+import net.minecraft.util.profiler.Profiler;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
-public class GameManager implements SimpleSynchronousResourceReloadListener {
+/**
+ * Loads all games of the datapacks. Reading, decompressing, parsing and validating happens in parallel on the reload
+ * executor, the finished games are then published all at once.
+ */
+public class GameManager implements SimpleResourceReloadListener<Map<Identifier, GameManager.LoadedGame>> {
 
     private static final Identifier ID = new Identifier("mini_tardis_games", "game_manager");
+    private static final String[] REQUIRED_EXPORTS = {"mtg_alloc_data", "mtg_draw"};
+    // either is enough to receive clicks, mtg_on_input together with mtg_input_buffer
+    private static final String[][] INPUT_EXPORTS = {{"mtg_on_input", "mtg_input_buffer"}, {"mtg_on_click"}};
+    private static final String ASSETS_DIRECTORY = ".assets/";
 
-    public static final Map<Identifier, byte[]> GAMES = new HashMap<>();
+    private static volatile Map<Identifier, Game> games = Map.of();
+
+    public static Map<Identifier, Game> getGames() {
+        return games;
+    }
+
+    @Nullable
+    public static Game getGame(Identifier id) {
+        return games.get(id);
+    }
 
     @Override
     public Identifier getFabricId() {
@@ -20,15 +52,165 @@ public class GameManager implements SimpleSynchronousResourceReloadListener {
     }
 
     @Override
-    public void reload(ResourceManager manager) {
-        GAMES.clear();
-        var games = manager.findResources("mini_tardis_games", identifier -> identifier.getPath().endsWith(".wasm.gz"));
-        for (var game : games.entrySet()) {
-            try (var stream = game.getValue().getInputStream()) {
-                GAMES.put(game.getKey().withPath(game.getKey().getPath().replace("mini_tardis_games/", "").replace(".wasm.gz", "")), stream.readAllBytes());
+    public CompletableFuture<Map<Identifier, LoadedGame>> load(ResourceManager manager, Profiler profiler, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> loadMetadata(manager), executor).thenCompose(metadata -> {
+            var loaded = new ConcurrentHashMap<Identifier, LoadedGame>();
+            var futures = new ArrayList<CompletableFuture<Void>>();
+            var assets = findAssets(manager);
+            var files = manager.findResources("mini_tardis_games", identifier -> identifier.getPath().endsWith(".wasm.gz") && !isAsset(identifier));
+            for (var file : files.entrySet()) {
+                var id = toGameId(file.getKey(), ".wasm.gz");
+                futures.add(CompletableFuture.runAsync(() -> {
+                    var game = loadGame(id, file.getValue(), metadata.getOrDefault(id, GameMetadata.EMPTY), assets.getOrDefault(id, Map.of()));
+                    if (game != null) {
+                        loaded.put(id, game);
+                    }
+                }, executor));
+            }
+            return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(ignored -> loaded);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> apply(Map<Identifier, LoadedGame> loaded, ResourceManager manager, Profiler profiler, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            var published = new HashMap<Identifier, Game>();
+            ModuleCache.invalidate();
+            InstancePool.invalidate();
+            // the screens showing them keep their old guests, the next screen opening one of these games gets a new one
+            var inUse = GuestMemory.getResidentGames();
+            loaded.forEach((id, game) -> {
+                published.put(id, game.game());
+                ModuleCache.put(id, game.game(), game.module());
+                if (inUse.contains(id)) {
+                    Util.getMainWorkerExecutor().execute(() -> InstancePool.prewarm(id, game.module()));
+                }
+            });
+            games = Map.copyOf(published);
+            MiniTardisGames.LOGGER.info("Loaded {} games", published.size());
+        }, executor);
+    }
+
+    private static Map<Identifier, GameMetadata> loadMetadata(ResourceManager manager) {
+        var metadata = new HashMap<Identifier, GameMetadata>();
+        var metadataFiles = manager.findResources("mini_tardis_games", identifier -> identifier.getPath().endsWith(".json") && !isAsset(identifier));
+        for (var file : metadataFiles.entrySet()) {
+            try (var reader = file.getValue().getReader()) {
+                var id = toGameId(file.getKey(), ".json");
+                var value = readMetadata(id, reader);
+                if (value != null) {
+                    metadata.put(id, value);
+                }
+            } catch (IOException | RuntimeException e) {
+                MiniTardisGames.LOGGER.error("error while reloading game metadata", e);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * @return the metadata in {@code reader}, null if it is invalid
+     */
+    @Nullable
+    static GameMetadata readMetadata(Identifier id, Reader reader) {
+        return GameMetadata.CODEC.parse(JsonOps.INSTANCE, JsonParser.parseReader(reader))
+                .resultOrPartial(error -> MiniTardisGames.LOGGER.error("error while reading metadata of game {}: {}", id, error))
+                .orElse(null);
+    }
+
+    private static boolean isAsset(Identifier file) {
+        return file.getPath().contains(ASSETS_DIRECTORY);
+    }
+
+    /**
+     * @return the files in the {@code <game>.assets} directories, by game and path relative to that directory
+     */
+    private static Map<Identifier, Map<String, Resource>> findAssets(ResourceManager manager) {
+        var assets = new HashMap<Identifier, Map<String, Resource>>();
+        for (var file : manager.findResources("mini_tardis_games", GameManager::isAsset).entrySet()) {
+            var path = file.getKey().getPath();
+            var separator = path.indexOf(ASSETS_DIRECTORY);
+            var id = toGameId(file.getKey().withPath(path.substring(0, separator)), "");
+            assets.computeIfAbsent(id, ignored -> new HashMap<>()).put(path.substring(separator + ASSETS_DIRECTORY.length()), file.getValue());
+        }
+        return assets;
+    }
+
+    @Nullable
+    private static LoadedGame loadGame(Identifier id, Resource resource, GameMetadata metadata, Map<String, Resource> assetFiles) {
+        byte[] data;
+        try (var stream = resource.getInputStream()) {
+            data = stream.readAllBytes();
+        } catch (IOException e) {
+            MiniTardisGames.LOGGER.error("error while reloading game {}", id, e);
+            return null;
+        }
+        var assets = new HashMap<String, byte[]>();
+        for (var asset : assetFiles.entrySet()) {
+            try (var stream = asset.getValue().getInputStream()) {
+                // gzipped assets are kept compressed until a guest opens them
+                assets.put(asset.getKey(), stream.readAllBytes());
             } catch (IOException e) {
-                MiniTardisGames.LOGGER.error("error while reloading games", e);
+                MiniTardisGames.LOGGER.error("error while reloading asset {} of game {}", asset.getKey(), id, e);
+                return null;
+            }
+        }
+        try {
+            var inflated = ModuleCache.inflate(data);
+            WasmBackedAppView.Guest.checkImports(inflated);
+            var module = ModuleCache.parseInflated(id, inflated);
+            for (var export : REQUIRED_EXPORTS) {
+                module.export(export);
+            }
+            requireInputExports(module);
+            return new LoadedGame(new Game(data, hash(data), metadata, GameAssets.of(assets)), module);
+        } catch (RuntimeException e) {
+            MiniTardisGames.LOGGER.error("Rejected invalid game {}: {}", id, e.toString());
+            return null;
+        }
+    }
+
+    private static void requireInputExports(Module module) {
+        RuntimeException missing = null;
+        for (var exports : INPUT_EXPORTS) {
+            try {
+                for (var export : exports) {
+                    module.export(export);
+                }
+                return;
+            } catch (RuntimeException e) {
+                missing = e;
             }
         }
+        throw missing;
+    }
+
+    private static Identifier toGameId(Identifier file, String extension) {
+        return file.withPath(file.getPath().replace("mini_tardis_games/", "").replace(extension, ""));
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A loaded game.
+     *
+     * @param data the gzipped WASM module as found in the datapack
+     * @param hash the SHA-256 hash of {@code data}, used to tell apart different versions of the same game
+     * @param metadata the settings from the game's {@code .json} file, or {@link GameMetadata#EMPTY} if there is none
+     * @param assets the files from the game's {@code .assets} directory, shared by all its screens
+     */
+    public record Game(byte[] data, String hash, GameMetadata metadata, GameAssets assets) {
+    }
+
+    /**
+     * A game together with its parsed module, handed from the load to the apply phase.
+     */
+    public record LoadedGame(Game game, Module module) {
     }
 }
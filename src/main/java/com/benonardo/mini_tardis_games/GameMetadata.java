@@ -0,0 +1,36 @@
+package com.benonardo.mini_tardis_games;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import java.util.Optional;
+
+/**
+ * Optional per game settings, read from a {@code .json} file next to the game's {@code .wasm.gz} in the datapack.
+ * Every setting that is present overrides the corresponding {@link MiniTardisGamesConfig} value.
+ *
+ * @param fpsCap the highest frame rate the game wants to be drawn at, by default every tick
+ */
+public record GameMetadata(Optional<Long> maxCallMillis, Optional<Long> maxHostCalls, Optional<Integer> fpsCap,
+                           Optional<Integer> maxPersistentDataBytes) {
+
+    public static final GameMetadata EMPTY = new GameMetadata(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+    public static final Codec<GameMetadata> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.LONG.optionalFieldOf("max_call_millis").forGetter(GameMetadata::maxCallMillis),
+            Codec.LONG.optionalFieldOf("max_host_calls").forGetter(GameMetadata::maxHostCalls),
+            Codec.intRange(1, FramePacer.TICKS_PER_SECOND).optionalFieldOf("fps_cap").forGetter(GameMetadata::fpsCap),
+            Codec.INT.optionalFieldOf("max_persistent_data_bytes").forGetter(GameMetadata::maxPersistentDataBytes)
+    ).apply(instance, GameMetadata::new));
+
+    public long maxCallMillis(MiniTardisGamesConfig config) {
+        return this.maxCallMillis.orElse(config.maxCallMillis());
+    }
+
+    public long maxHostCalls(MiniTardisGamesConfig config) {
+        return this.maxHostCalls.orElse(config.maxHostCalls());
+    }
+
+    public int maxPersistentDataBytes(MiniTardisGamesConfig config) {
+        return this.maxPersistentDataBytes.orElse(config.maxPersistentDataBytes());
+    }
+}
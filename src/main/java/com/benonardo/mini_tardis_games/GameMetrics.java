@@ -0,0 +1,245 @@
+package com.benonardo.mini_tardis_games;
+
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per game counters of guest calls, host calls, persistent data traffic and drawn pixels.
+ * <p>
+ * Recording only touches striped adders and atomic arrays, so it never blocks and is cheap enough to stay enabled.
+ * {@link #snapshot()} gives a consistent enough copy for commands and external monitoring.
+ */
+public final class GameMetrics {
+
+    private static final Map<Identifier, GameMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private final Identifier gameId;
+    private final ExportStats[] exports = new ExportStats[Export.values().length];
+    private final Map<String, LongAdder> hostCalls = new ConcurrentHashMap<>();
+    private final LongAdder persistentBytesSaved = new LongAdder();
+    private final LongAdder persistentBytesLoaded = new LongAdder();
+    private final LongAdder unchangedPersistentSaves = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder unchangedFrames = new LongAdder();
+    private final LongAdder pixelsSent = new LongAdder();
+    private final LongAdder pixelsSkipped = new LongAdder();
+
+    private GameMetrics(Identifier gameId) {
+        this.gameId = gameId;
+        for (var i = 0; i < this.exports.length; i++) {
+            this.exports[i] = new ExportStats();
+        }
+    }
+
+    @NotNull
+    public static GameMetrics of(@NotNull Identifier gameId) {
+        return METRICS.computeIfAbsent(gameId, GameMetrics::new);
+    }
+
+    /**
+     * Zeroes the metrics of every game in place, views and guests keep recording into the same objects.
+     */
+    public static void reset() {
+        for (var metrics : METRICS.values()) {
+            metrics.resetGame();
+        }
+    }
+
+    private void resetGame() {
+        for (var export : this.exports) {
+            export.reset();
+        }
+        this.hostCalls.values().forEach(LongAdder::reset);
+        this.persistentBytesSaved.reset();
+        this.persistentBytesLoaded.reset();
+        this.unchangedPersistentSaves.reset();
+        this.frames.reset();
+        this.unchangedFrames.reset();
+        this.pixelsSent.reset();
+        this.pixelsSkipped.reset();
+    }
+
+    @NotNull
+    public static List<Snapshot> snapshot() {
+        var snapshots = new ArrayList<Snapshot>();
+        for (var metrics : METRICS.values()) {
+            snapshots.add(metrics.snapshotGame());
+        }
+        snapshots.sort(Comparator.comparing(Snapshot::gameId));
+        return snapshots;
+    }
+
+    @NotNull
+    public Identifier getGameId() {
+        return this.gameId;
+    }
+
+    public ExportStats export(Export export) {
+        return this.exports[export.ordinal()];
+    }
+
+    /**
+     * Returns the counter for a host function, meant to be looked up once when the host function is created.
+     */
+    public LongAdder hostCallCounter(String name) {
+        return this.hostCalls.computeIfAbsent(name, ignored -> new LongAdder());
+    }
+
+    public void onPersistentDataSaved(int bytes) {
+        this.persistentBytesSaved.add(bytes);
+    }
+
+    public void onPersistentDataUnchanged() {
+        this.unchangedPersistentSaves.increment();
+    }
+
+    public void onPersistentDataLoaded(int bytes) {
+        this.persistentBytesLoaded.add(bytes);
+    }
+
+    /**
+     * @param sent    pixels that actually changed on the canvas
+     * @param skipped pixels the game wrote with the color they already had
+     */
+    public void onPixelsDrawn(int sent, int skipped) {
+        this.pixelsSent.add(sent);
+        this.pixelsSkipped.add(skipped);
+    }
+
+    public void onFrame(boolean changed) {
+        this.frames.increment();
+        if (!changed) {
+            this.unchangedFrames.increment();
+        }
+    }
+
+    @NotNull
+    public Snapshot snapshotGame() {
+        var exports = new LinkedHashMap<String, ExportSnapshot>();
+        for (var export : Export.values()) {
+            var snapshot = export(export).snapshot();
+            if (snapshot.calls() > 0) {
+                exports.put(export.getName(), snapshot);
+            }
+        }
+        var hostCalls = new TreeMap<String, Long>();
+        this.hostCalls.forEach((name, count) -> hostCalls.put(name, count.sum()));
+        return new Snapshot(this.gameId, exports, hostCalls, this.persistentBytesSaved.sum(), this.persistentBytesLoaded.sum(),
+                this.unchangedPersistentSaves.sum(), this.frames.sum(), this.unchangedFrames.sum(), this.pixelsSent.sum(), this.pixelsSkipped.sum());
+    }
+
+    public enum Export {
+        ALLOC_DATA("mtg_alloc_data"),
+        DRAW("mtg_draw"),
+        DRAW_BACKGROUND("mtg_draw_background"),
+        ON_CLICK("mtg_on_click"),
+        ON_INPUT("mtg_on_input"),
+        INPUT_BUFFER("mtg_input_buffer"),
+        SCREEN_TICK("mtg_screen_tick"),
+        SCREEN_OPEN("mtg_screen_open"),
+        SCREEN_CLOSE("mtg_screen_close");
+
+        private final String name;
+
+        Export(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    /**
+     * A latency histogram with four buckets per power of two nanoseconds, so percentiles are accurate to about 19%.
+     */
+    public static final class ExportStats {
+
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int BUCKETS = (Long.SIZE + 1) << SUB_BUCKET_BITS;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private ExportStats() {
+        }
+
+        public void record(long nanos) {
+            this.calls.increment();
+            this.max.accumulate(nanos);
+            this.buckets.incrementAndGet(bucket(Math.max(0, nanos)));
+        }
+
+        private void reset() {
+            this.calls.reset();
+            this.max.reset();
+            for (var i = 0; i < BUCKETS; i++) {
+                this.buckets.set(i, 0);
+            }
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < 1 << SUB_BUCKET_BITS) {
+                return (int) nanos;
+            }
+            var exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+            var subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS | subBucket;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < 1 << SUB_BUCKET_BITS) {
+                return bucket;
+            }
+            var exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+            var subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+            if (exponent >= Long.SIZE - 1) {
+                return Long.MAX_VALUE;
+            }
+            return (1L << exponent) + ((subBucket + 1L) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        public ExportSnapshot snapshot() {
+            var counts = new long[BUCKETS];
+            var total = 0L;
+            for (var i = 0; i < BUCKETS; i++) {
+                counts[i] = this.buckets.get(i);
+                total += counts[i];
+            }
+            var max = this.max.get();
+            return new ExportSnapshot(this.calls.sum(), Math.min(max, percentile(counts, total, 0.5)), Math.min(max, percentile(counts, total, 0.99)), max);
+        }
+
+        private static long percentile(long[] counts, long total, double percentile) {
+            var target = (long) Math.ceil(total * percentile);
+            var seen = 0L;
+            for (var i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    public record ExportSnapshot(long calls, long p50Nanos, long p99Nanos, long maxNanos) {
+    }
+
+    public record Snapshot(Identifier gameId, Map<String, ExportSnapshot> exports, Map<String, Long> hostCalls,
+                           long persistentBytesSaved, long persistentBytesLoaded, long unchangedPersistentSaves,
+                           long frames, long unchangedFrames, long pixelsSent, long pixelsSkipped) {
+    }
+}
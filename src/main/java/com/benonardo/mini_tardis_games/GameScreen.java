@@ -0,0 +1,48 @@
+package com.benonardo.mini_tardis_games;
+
+import dev.enjarai.minitardis.block.console.ScreenBlockEntity;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvent;
+import net.minecraft.util.math.random.Random;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The parts of a console screen that games can interact with.
+ * Usually backed by a {@link ScreenBlockEntity}, but can be implemented to run games without a world.
+ */
+public interface GameScreen {
+
+    @NotNull
+    static GameScreen of(@NotNull ScreenBlockEntity blockEntity) {
+        return new BlockEntity(blockEntity);
+    }
+
+    @NotNull
+    Random getRandom();
+
+    void playSound(@NotNull SoundEvent sound, @NotNull SoundCategory category, float volume, float pitch);
+
+    void closeApp();
+
+    record BlockEntity(@NotNull ScreenBlockEntity blockEntity) implements GameScreen {
+
+        @Override
+        @NotNull
+        public Random getRandom() {
+            return this.blockEntity.drawRandom;
+        }
+
+        @Override
+        public void playSound(@NotNull SoundEvent sound, @NotNull SoundCategory category, float volume, float pitch) {
+            var world = this.blockEntity.getWorld();
+            if (world != null) {
+                world.playSound(null, this.blockEntity.getPos(), sound, category, volume, pitch);
+            }
+        }
+
+        @Override
+        public void closeApp() {
+            this.blockEntity.closeApp();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.benonardo.mini_tardis_games;
+
+import eu.pb4.mapcanvas.api.core.CanvasColor;
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+import eu.pb4.mapcanvas.api.font.CanvasFont;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which pixels a piece of text covers, so that labels, scores and menus that games redraw every frame are
+ * rasterized by the font once and only copied onto the canvas afterwards.
+ * <p>
+ * Runs are shared by all games and evicted least recently used first once there are more than
+ * {@link MiniTardisGamesConfig#glyphRunCacheSize()}. Long and huge texts are rarely drawn twice and always go to the
+ * font.
+ */
+public final class GlyphRunCache {
+
+    private static final int MAX_TEXT_LENGTH = 128;
+    private static final int MAX_TEXT_SIZE = 256;
+    private static final Map<Key, Run> RUNS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Run> eldest) {
+            return size() > MiniTardisGames.getConfig().glyphRunCacheSize();
+        }
+    };
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private GlyphRunCache() {
+    }
+
+    /**
+     * Draws like {@link CanvasFont#drawText(DrawableCanvas, String, int, int, double, CanvasColor)}.
+     */
+    public static void drawText(@NotNull DrawableCanvas canvas, @NotNull CanvasFont font, @NotNull String text, int x, int y, int size, @NotNull CanvasColor color) {
+        if (size <= 0 || x >= canvas.getWidth() || y >= canvas.getHeight() || (long) y + size <= 0) {
+            return;
+        }
+        // a run of huge text would record every scaled pixel of every glyph, most of them off the canvas
+        if (MiniTardisGames.getConfig().glyphRunCacheSize() <= 0 || text.length() > MAX_TEXT_LENGTH || size > MAX_TEXT_SIZE) {
+            font.drawText(canvas, text, x, y, size, color);
+            return;
+        }
+        var key = new Key(font, text, size, color);
+        Run run;
+        synchronized (RUNS) {
+            run = RUNS.get(key);
+        }
+        if (run != null) {
+            HITS.incrementAndGet();
+        } else {
+            MISSES.incrementAndGet();
+            run = rasterize(font, text, size, color);
+            synchronized (RUNS) {
+                RUNS.put(key, run);
+            }
+        }
+        run.draw(canvas, x, y);
+    }
+
+    private static Run rasterize(CanvasFont font, String text, int size, CanvasColor color) {
+        var recorder = new RecordingCanvas();
+        font.drawText(recorder, text, 0, 0, size, color);
+        return new Run(recorder.xs.toIntArray(), recorder.ys.toIntArray(), recorder.colors.toIntArray());
+    }
+
+    public static int size() {
+        synchronized (RUNS) {
+            return RUNS.size();
+        }
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    private record Key(CanvasFont font, String text, int size, CanvasColor color) {
+    }
+
+    private record Run(int[] xs, int[] ys, int[] colors) {
+
+        private void draw(DrawableCanvas canvas, int x, int y) {
+            var width = canvas.getWidth();
+            var height = canvas.getHeight();
+            for (var i = 0; i < this.xs.length; i++) {
+                var pixelX = x + this.xs[i];
+                var pixelY = y + this.ys[i];
+                if (pixelX >= 0 && pixelY >= 0 && pixelX < width && pixelY < height) {
+                    canvas.setRaw(pixelX, pixelY, (byte) this.colors[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unbounded canvas the font draws into at the origin, so that runs can be moved anywhere.
+     */
+    private static final class RecordingCanvas implements DrawableCanvas {
+
+        private final IntArrayList xs = new IntArrayList();
+        private final IntArrayList ys = new IntArrayList();
+        private final IntArrayList colors = new IntArrayList();
+
+        @Override
+        public byte getRaw(int x, int y) {
+            return 0;
+        }
+
+        @Override
+        public void setRaw(int x, int y, byte color) {
+            this.xs.add(x);
+            this.ys.add(y);
+            this.colors.add(color);
+        }
+
+        @Override
+        public int getHeight() {
+            return Short.MAX_VALUE;
+        }
+
+        @Override
+        public int getWidth() {
+            return Short.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Memory;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the linear memory of every view that currently holds a guest.
+ * <p>
+ * A single guest may not grow past {@link MiniTardisGamesConfig#maxInstancePages()}. All guests together are kept
+ * under {@link MiniTardisGamesConfig#maxGuestMemoryMegabytes()} by hibernating the least recently used views,
+ * and views that haven't been used for {@link MiniTardisGamesConfig#hibernateIdleSeconds()} are hibernated as well.
+ */
+public final class GuestMemory {
+
+    // views that are thrown away without closing their screen must not be kept alive by this
+    private static final Set<WasmBackedAppView> RESIDENT = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final AtomicLong HIBERNATIONS = new AtomicLong();
+
+    private GuestMemory() {
+    }
+
+    static void onResident(WasmBackedAppView view) {
+        RESIDENT.add(view);
+    }
+
+    static void onReleased(WasmBackedAppView view) {
+        RESIDENT.remove(view);
+    }
+
+    static void onHibernated(WasmBackedAppView view) {
+        RESIDENT.remove(view);
+        HIBERNATIONS.incrementAndGet();
+    }
+
+    static void checkPages(Identifier gameId, @Nullable Memory memory) {
+        var maxPages = MiniTardisGames.getConfig().maxInstancePages();
+        if (memory != null && maxPages > 0 && memory.pages() > maxPages) {
+            throw new ExceededException("Game " + gameId + " grew its memory to " + memory.pages() + " pages, more than the allowed " + maxPages);
+        }
+    }
+
+    /**
+     * Hibernates idle views and, if the guests together still use too much memory, the least recently used ones
+     * until they don't. Called periodically from the server tick.
+     */
+    public static void enforce() {
+        var config = MiniTardisGames.getConfig();
+        var maxBytes = config.maxGuestMemoryMegabytes() * 1024 * 1024;
+        var idleMillis = config.hibernateIdleSeconds() * 1000;
+        if (maxBytes <= 0 && idleMillis <= 0) {
+            return;
+        }
+        // worker threads keep updating when a view was last used, so the order is taken from a snapshot
+        var views = new ArrayList<Resident>();
+        synchronized (RESIDENT) {
+            for (var view : RESIDENT) {
+                views.add(new Resident(view, view.getLastUsed(), view.getResidentBytes()));
+            }
+        }
+        views.sort(Comparator.comparingLong(Resident::lastUsed));
+
+        var now = System.nanoTime();
+        var total = 0L;
+        for (var resident : views) {
+            total += resident.bytes();
+        }
+        for (var resident : views) {
+            var idle = idleMillis > 0 && now - resident.lastUsed() > TimeUnit.MILLISECONDS.toNanos(idleMillis);
+            if (!idle && (maxBytes <= 0 || total <= maxBytes)) {
+                break;
+            }
+            total -= resident.bytes();
+            resident.view().hibernate();
+        }
+    }
+
+    public static long getResidentBytes() {
+        ArrayList<WasmBackedAppView> views;
+        synchronized (RESIDENT) {
+            views = new ArrayList<>(RESIDENT);
+        }
+        return views.stream().mapToLong(WasmBackedAppView::getResidentBytes).sum();
+    }
+
+    /**
+     * @return the games that currently have a guest in memory
+     */
+    public static Set<Identifier> getResidentGames() {
+        var games = new HashSet<Identifier>();
+        synchronized (RESIDENT) {
+            for (var view : RESIDENT) {
+                games.add(view.getGameId());
+            }
+        }
+        return games;
+    }
+
+    public static int getResidentCount() {
+        return RESIDENT.size();
+    }
+
+    public static long getHibernations() {
+        return HIBERNATIONS.get();
+    }
+
+    private record Resident(WasmBackedAppView view, long lastUsed, long bytes) {
+    }
+
+    public static final class ExceededException extends RuntimeException {
+
+        private ExceededException(String message) {
+            super(message);
+        }
+    }
+}
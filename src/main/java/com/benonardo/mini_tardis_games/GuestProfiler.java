@@ -0,0 +1,359 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Instance;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Samples which WASM functions of a game its export calls spend their wall clock time in, for a fixed duration. While a
+ * game is profiled, a sampler thread looks at the interpreter's call stack of every running call of it once per
+ * {@link #SAMPLE_INTERVAL_NANOS} and counts the stack, with the host function it is in if any. The result is written
+ * in the collapsed stack format that flamegraph.pl, speedscope and most other flame graph tools read.
+ * <p>
+ * Samples count wall clock time, not executed instructions: a call whose thread waits for a processor still gets
+ * samples. Functions are named from the module's name section, or {@code func[index]} if it was stripped.
+ */
+public final class GuestProfiler {
+
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int TOP_FUNCTIONS = 5;
+
+    private static final Map<Identifier, Session> SESSIONS = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss", Locale.ROOT);
+
+    private GuestProfiler() {
+    }
+
+    /**
+     * @return why guest code can't be profiled with the Chicory version in use, null if it can as far as can be told
+     * before a call is sampled
+     */
+    @Nullable
+    public static String getUnsupportedReason() {
+        return CallStacks.UNSUPPORTED_REASON;
+    }
+
+    /**
+     * Profiles {@code gameId} for {@code seconds}, then writes the profile and hands the result to {@code onFinished}
+     * on the sampler thread.
+     *
+     * @return false if the game is already being profiled
+     */
+    public static boolean start(@NotNull Identifier gameId, int seconds, @NotNull Consumer<Result> onFinished) {
+        var session = new Session(gameId, TimeUnit.SECONDS.toNanos(seconds));
+        if (SESSIONS.putIfAbsent(gameId, session) != null) {
+            return false;
+        }
+        var thread = new Thread(() -> {
+            try {
+                onFinished.accept(session.run());
+            } catch (Throwable throwable) {
+                MiniTardisGames.LOGGER.error("error while profiling game {}", gameId, throwable);
+            } finally {
+                SESSIONS.remove(gameId);
+            }
+        }, "Mini Tardis Games Profiler " + gameId);
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Nullable
+    static Session get(@NotNull Identifier gameId) {
+        // the common case, checked on every export call
+        if (SESSIONS.isEmpty()) {
+            return null;
+        }
+        return SESSIONS.get(gameId);
+    }
+
+    public static Path getDirectory() {
+        return FabricLoader.getInstance().getGameDir().resolve(MiniTardisGames.MOD_ID).resolve("profiles");
+    }
+
+    private static Map<Integer, String> functionNames(Identifier gameId) {
+        var game = GameManager.getGame(gameId);
+        if (game == null) {
+            return Map.of();
+        }
+        return WasmNameSection.functionNames(ModuleCache.inflate(game.data()));
+    }
+
+    /**
+     * @return the function indices of the interpreter's call stack of {@code instance}, outermost first, null if it
+     * can't be read
+     */
+    @Nullable
+    static int[] callStack(@NotNull Instance instance) {
+        var frames = CallStacks.read(instance);
+        if (frames == null) {
+            return null;
+        }
+        // the innermost frame comes first
+        var indices = new int[frames.length];
+        for (var i = 0; i < frames.length; i++) {
+            indices[frames.length - 1 - i] = CallStacks.functionIndex(frames[i]);
+        }
+        return indices;
+    }
+
+    static final class Session {
+
+        private final Identifier gameId;
+        private final long durationNanos;
+        private final Set<Call> running = ConcurrentHashMap.newKeySet();
+        // only touched by the sampler thread
+        private final Map<String, long[]> stacks = new HashMap<>();
+        private final Map<String, long[]> selfSamples = new HashMap<>();
+        private final StringBuilder stack = new StringBuilder();
+        private Map<Integer, String> names = Map.of();
+        private long samples;
+        private long lostSamples;
+
+        private Session(Identifier gameId, long durationNanos) {
+            this.gameId = gameId;
+            this.durationNanos = durationNanos;
+        }
+
+        @NotNull
+        Call enter(@NotNull Instance instance, @NotNull GameMetrics.Export export) {
+            var call = new Call(instance, export);
+            this.running.add(call);
+            return call;
+        }
+
+        void exit(@NotNull Call call) {
+            this.running.remove(call);
+        }
+
+        private Result run() throws IOException {
+            this.names = functionNames(this.gameId);
+            var start = System.nanoTime();
+            var end = start + this.durationNanos;
+            var ticks = 0L;
+            while (System.nanoTime() - end < 0) {
+                LockSupport.parkNanos(SAMPLE_INTERVAL_NANOS);
+                ticks++;
+                for (var call : this.running) {
+                    sample(call);
+                }
+            }
+            // parking usually oversleeps, so a sample stands for more than the interval
+            var nanosPerSample = ticks == 0 ? 0 : (System.nanoTime() - start) / ticks;
+            return new Result(this.gameId, write(), this.samples, this.lostSamples, nanosPerSample, topFunctions());
+        }
+
+        private void sample(Call call) {
+            var frames = callStack(call.instance);
+            if (frames == null) {
+                this.lostSamples++;
+                return;
+            }
+            this.samples++;
+            this.stack.setLength(0);
+            String leaf;
+            if (frames.length == 0) {
+                // between entering the export and the interpreter pushing its frame
+                leaf = call.export.getName();
+                this.stack.append(leaf);
+            } else {
+                leaf = null;
+                for (var frame : frames) {
+                    leaf = name(frame);
+                    if (!this.stack.isEmpty()) {
+                        this.stack.append(';');
+                    }
+                    this.stack.append(leaf);
+                }
+            }
+            var hostFunction = call.hostFunction;
+            if (hostFunction != null) {
+                leaf = "[host] " + hostFunction;
+                this.stack.append(';').append(leaf);
+            }
+            this.stacks.computeIfAbsent(this.stack.toString(), ignored -> new long[1])[0]++;
+            this.selfSamples.computeIfAbsent(leaf, ignored -> new long[1])[0]++;
+        }
+
+        private String name(int index) {
+            var name = this.names.get(index);
+            // the collapsed format separates frames with semicolons and stacks with newlines
+            return name == null ? "func[" + index + "]" : name.replace(';', ':').replace('\n', ' ');
+        }
+
+        private Path write() throws IOException {
+            var file = getDirectory().resolve(this.gameId.getNamespace() + "_" + this.gameId.getPath().replace('/', '_') + "_" + LocalDateTime.now().format(FILE_TIME) + ".wallclock.collapsed");
+            Files.createDirectories(file.getParent());
+            var lines = new ArrayList<String>(this.stacks.size());
+            this.stacks.entrySet().stream()
+                    .sorted(Map.Entry.<String, long[]>comparingByValue(Comparator.comparingLong(count -> -count[0])))
+                    .forEach(entry -> lines.add(entry.getKey() + " " + entry.getValue()[0]));
+            Files.write(file, lines);
+            return file;
+        }
+
+        private List<Function> topFunctions() {
+            return this.selfSamples.entrySet().stream()
+                    .map(entry -> new Function(entry.getKey(), entry.getValue()[0]))
+                    .sorted(Comparator.comparingLong(Function::selfSamples).reversed())
+                    .limit(TOP_FUNCTIONS)
+                    .toList();
+        }
+    }
+
+    /**
+     * An export call in progress. The host function is set by the guest's thread around every host call.
+     */
+    static final class Call {
+
+        private final Instance instance;
+        private final GameMetrics.Export export;
+        @Nullable
+        volatile String hostFunction;
+
+        private Call(Instance instance, GameMetrics.Export export) {
+            this.instance = instance;
+            this.export = export;
+        }
+    }
+
+    /**
+     * Chicory has no public way to look at the interpreter's call stack, so it is read through reflection: the
+     * instance's machine keeps a deque of frames, innermost first, that each know their function index in a
+     * {@code funcId} field. The deque is read while the guest's thread keeps changing it, which occasionally fails or
+     * tears, and such samples are dropped.
+     * <p>
+     * These are internals of the pinned Chicory version, {@code ProfilerSupportTest} fails once they change.
+     */
+    private static final class CallStacks {
+
+        @Nullable
+        private static final Field MACHINE;
+        @Nullable
+        private static final String UNSUPPORTED_REASON;
+        private static final ClassValue<Field> CALL_STACK = new ClassValue<>() {
+            @Override
+            protected Field computeValue(@NotNull Class<?> type) {
+                return findField(type, field -> Deque.class.isAssignableFrom(field.getType()));
+            }
+        };
+        private static final ClassValue<Field> FUNCTION_INDEX = new ClassValue<>() {
+            @Override
+            protected Field computeValue(@NotNull Class<?> type) {
+                return findField(type, field -> field.getType() == int.class && field.getName().equals("funcId"));
+            }
+        };
+
+        static {
+            var machine = findField(Instance.class, field -> field.getType().getSimpleName().endsWith("Machine"));
+            MACHINE = machine;
+            UNSUPPORTED_REASON = unsupportedReason(machine);
+        }
+
+        @Nullable
+        private static String unsupportedReason(@Nullable Field machine) {
+            if (machine == null) {
+                return "Chicory's Instance has no interpreter machine to sample";
+            }
+            var type = machine.getType();
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                // the machine's class is only known once there is an instance
+                return null;
+            }
+            var callStack = CALL_STACK.get(type);
+            if (callStack == null) {
+                return "Chicory's interpreter machine keeps no call stack to sample";
+            }
+            if (callStack.getGenericType() instanceof ParameterizedType deque && deque.getActualTypeArguments()[0] instanceof Class<?> frame
+                    && FUNCTION_INDEX.get(frame) == null) {
+                return "Chicory's call stack frames have no funcId field";
+            }
+            return null;
+        }
+
+        @Nullable
+        static Object[] read(Instance instance) {
+            if (MACHINE == null) {
+                return null;
+            }
+            try {
+                var machine = MACHINE.get(instance);
+                var callStack = machine == null ? null : CALL_STACK.get(machine.getClass());
+                if (callStack == null) {
+                    return null;
+                }
+                var frames = ((Deque<?>) callStack.get(machine)).toArray();
+                for (var frame : frames) {
+                    if (frame == null || FUNCTION_INDEX.get(frame.getClass()) == null) {
+                        return null;
+                    }
+                }
+                return frames;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        static int functionIndex(Object frame) {
+            try {
+                return FUNCTION_INDEX.get(frame.getClass()).getInt(frame);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Nullable
+        private static Field findField(Class<?> type, Predicate<Field> predicate) {
+            for (var current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (var field : current.getDeclaredFields()) {
+                    if (predicate.test(field)) {
+                        try {
+                            field.setAccessible(true);
+                            return field;
+                        } catch (RuntimeException e) {
+                            return null;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    public record Function(@NotNull String name, long selfSamples) {
+    }
+
+    /**
+     * @param lostSamples    samples whose call stack couldn't be read, all of them if the Chicory version in use turned
+     *                       out to be unsupported
+     * @param nanosPerSample the wall clock time a sample stands for
+     * @param topFunctions   the functions with the most samples where they were the innermost frame
+     */
+    public record Result(@NotNull Identifier gameId, @NotNull Path file, long samples, long lostSamples,
+                         long nanosPerSample, @NotNull List<Function> topFunctions) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import dev.enjarai.minitardis.canvas.TardisCanvasUtils;
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+import eu.pb4.mapcanvas.api.font.CanvasFont;
+import eu.pb4.mapcanvas.api.font.DefaultFonts;
+import net.minecraft.sound.SoundEvent;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Sprites, sounds, fonts and texts that games resolved by name once and refer to by an integer handle afterwards,
+ * so that drawing and playing them doesn't have to decode a string from guest memory and look it up every time.
+ * <p>
+ * Every module has its own handles, so a game resolving lots of texts only runs out of handles itself. They are never
+ * invalidated while the module is in use, because guests keep them in their memory, which outlives a single instance
+ * through the {@link InstancePool} and hibernation. Reloading a game parses a new module with fresh handles, those of
+ * the old one go away with its last running view.
+ */
+final class GuestResources {
+
+    static final int INVALID_HANDLE = -1;
+
+    private static final int MAX_HANDLES = 4096;
+    // texts are resolved from whatever the guest passes, a game resolving changing text should notice early
+    private static final int MAX_TEXT_HANDLES = 1024;
+    private static final Map<Module, GuestResources> MODULES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    final Registry<DrawableCanvas> sprites = new Registry<>("sprite", MAX_HANDLES, TardisCanvasUtils::getSprite);
+    final Registry<SoundEvent> sounds = new Registry<>("sound", MAX_HANDLES, id -> SoundEvent.of(new Identifier(id)));
+    final Registry<CanvasFont> fonts = new Registry<>("font", MAX_HANDLES, name -> switch (name) {
+        // the same font mtg_draw_text uses, the only one offered for now
+        case "default", "minecraft:default" -> DefaultFonts.VANILLA;
+        default -> null;
+    });
+    final Registry<String> texts = new Registry<>("text", MAX_TEXT_HANDLES, Function.identity());
+
+    private GuestResources() {
+    }
+
+    @NotNull
+    static GuestResources of(@NotNull Module module) {
+        return MODULES.computeIfAbsent(module, ignored -> new GuestResources());
+    }
+
+    static final class Registry<T> {
+
+        private final String kind;
+        private final Function<String, T> resolver;
+        private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<T> values;
+        private int size;
+
+        private Registry(String kind, int maxHandles, Function<String, T> resolver) {
+            this.kind = kind;
+            this.resolver = resolver;
+            this.values = new AtomicReferenceArray<>(maxHandles);
+        }
+
+        /**
+         * @return the handle of the resource called {@code name}, or {@link #INVALID_HANDLE} if there is no such
+         * resource or the registry is full
+         */
+        int resolve(@NotNull String name) {
+            var handle = this.handles.get(name);
+            if (handle != null) {
+                return handle;
+            }
+            T value;
+            try {
+                value = this.resolver.apply(name);
+            } catch (InvalidIdentifierException e) {
+                value = null;
+            }
+            if (value == null) {
+                return INVALID_HANDLE;
+            }
+            return register(name, value);
+        }
+
+        /**
+         * Hands out a handle for {@code value} under {@code name}, unless the name already has one.
+         *
+         * @return the handle, or {@link #INVALID_HANDLE} if the registry is full
+         */
+        synchronized int register(@NotNull String name, @NotNull T value) {
+            var handle = this.handles.get(name);
+            if (handle != null) {
+                return handle;
+            }
+            if (this.size == this.values.length()) {
+                MiniTardisGames.LOGGER.warn("Ran out of {} handles, can't resolve {}", this.kind, name);
+                return INVALID_HANDLE;
+            }
+            handle = this.size++;
+            this.values.set(handle, value);
+            this.handles.put(name, handle);
+            return handle;
+        }
+
+        @NotNull
+        T get(int handle) {
+            var value = handle >= 0 && handle < this.values.length() ? this.values.get(handle) : null;
+            if (value == null) {
+                throw new IllegalArgumentException("Unknown " + this.kind + " handle " + handle);
+            }
+            return value;
+        }
+    }
+}
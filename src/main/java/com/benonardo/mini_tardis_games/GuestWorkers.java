@@ -0,0 +1,49 @@
+package com.benonardo.mini_tardis_games;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared, bounded thread pool that runs games when {@link MiniTardisGamesConfig#asyncExecution()} is enabled.
+ * <p>
+ * Jobs are never dropped: once the queue is full, the submitting thread runs the job itself. A dropped job could be the
+ * one releasing a guest, or leave a view waiting for a frame forever. Views keep how much they queue bounded instead.
+ */
+public final class GuestWorkers {
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static volatile ExecutorService executor;
+
+    private GuestWorkers() {
+    }
+
+    public static ExecutorService get() {
+        var executor = GuestWorkers.executor;
+        if (executor == null) {
+            synchronized (GuestWorkers.class) {
+                executor = GuestWorkers.executor;
+                if (executor == null) {
+                    executor = GuestWorkers.executor = create(MiniTardisGames.getConfig().workerThreads());
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService create(int threads) {
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        var counter = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+            var thread = new Thread(runnable, "Mini Tardis Games Worker #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,39 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.wasm.types.Value;
+
+/**
+ * Preallocated {@link Value}s for the numbers host functions return most, so that per pixel calls like
+ * {@code mtg_get_raw} don't allocate. Covers raw map colors, canvas sizes and small handles.
+ */
+final class HostValues {
+
+    private static final int MIN_CACHED = Byte.MIN_VALUE;
+    private static final int MAX_CACHED = 1024;
+    private static final Value[] I32 = new Value[MAX_CACHED - MIN_CACHED];
+    private static final Value[] I64 = new Value[MAX_CACHED - MIN_CACHED];
+
+    static {
+        for (var i = 0; i < I32.length; i++) {
+            I32[i] = Value.i32(i + MIN_CACHED);
+            I64[i] = Value.i64(i + MIN_CACHED);
+        }
+    }
+
+    private HostValues() {
+    }
+
+    static Value i32(int value) {
+        if (value >= MIN_CACHED && value < MAX_CACHED) {
+            return I32[value - MIN_CACHED];
+        }
+        return Value.i32(value);
+    }
+
+    static Value i64(long value) {
+        if (value >= MIN_CACHED && value < MAX_CACHED) {
+            return I64[(int) value - MIN_CACHED];
+        }
+        return Value.i64(value);
+    }
+}
@@ -0,0 +1,92 @@
+package com.benonardo.mini_tardis_games;
+
+import net.minecraft.util.ClickType;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clicks on a screen waiting to be delivered to a game that exports {@code mtg_on_input}. Clicks are queued without
+ * taking the view's monitor, so they never wait for a draw, and reach the game as one batch per tick.
+ * <p>
+ * In guest memory every event is four little endian i32s: the click type, x, y and the clicking player's entity id.
+ */
+final class InputQueue {
+
+    /**
+     * The number of events the buffer returned by {@code mtg_input_buffer} has to hold.
+     */
+    static final int BATCH_SIZE = 64;
+    static final int EVENT_SIZE = 16;
+    // a game that can't keep up loses clicks instead of memory
+    private static final int MAX_QUEUED = 4 * BATCH_SIZE;
+    private static final Event[] NO_EVENTS = new Event[0];
+
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @return whether the event was queued, false if the queue is full
+     */
+    boolean offer(int player, @NotNull ClickType type, int x, int y) {
+        if (this.size.incrementAndGet() > MAX_QUEUED) {
+            this.size.decrementAndGet();
+            return false;
+        }
+        this.events.add(new Event(type.ordinal(), x, y, player));
+        return true;
+    }
+
+    boolean isEmpty() {
+        return this.size.get() == 0;
+    }
+
+    @NotNull
+    Event[] drain() {
+        var count = this.size.get();
+        if (count == 0) {
+            return NO_EVENTS;
+        }
+        var drained = new Event[count];
+        for (var i = 0; i < count; i++) {
+            // offer counts an event before adding it, so it may not be visible yet
+            var event = this.events.poll();
+            if (event == null) {
+                count = i;
+                break;
+            }
+            drained[i] = event;
+        }
+        this.size.addAndGet(-count);
+        return count == drained.length ? drained : Arrays.copyOf(drained, count);
+    }
+
+    /**
+     * @return a buffer that holds a full batch for {@link #encode}
+     */
+    static ByteBuffer newBuffer() {
+        return ByteBuffer.allocate(BATCH_SIZE * EVENT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes {@code count} events starting at {@code start} into {@code buffer} in the layout the guest expects.
+     *
+     * @return the buffer, with the encoded events before its position
+     */
+    static ByteBuffer encode(Event[] events, int start, int count, ByteBuffer buffer) {
+        buffer.clear();
+        for (var i = start; i < start + count; i++) {
+            var event = events[i];
+            buffer.putInt(event.type()).putInt(event.x()).putInt(event.y()).putInt(event.player());
+        }
+        return buffer;
+    }
+
+    record Event(int type, int x, int y, int player) {
+    }
+}
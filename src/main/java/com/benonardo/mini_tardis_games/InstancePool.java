@@ -0,0 +1,188 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the guests of closed screens around, so that opening a game again doesn't have to instantiate its module.
+ * Guests are reset to a snapshot taken right after instantiation, before {@code mtg_alloc_data} read any persistent
+ * data, so every screen still gets its own game state.
+ * <p>
+ * Once a game has a snapshot, new guests are built from it too: they instantiate the module's
+ * {@link ModuleCache#skeleton}, which neither copies the data segments nor runs the start function again.
+ * The snapshot is kept compressed, most of a fresh guest's memory is zero pages or its data segments.
+ */
+public final class InstancePool {
+
+    private static final Map<Module, Pool> POOLS = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private InstancePool() {
+    }
+
+    @NotNull
+    static WasmBackedAppView.Guest acquire(@NotNull Identifier gameId, @NotNull Module module) {
+        if (MiniTardisGames.getConfig().instancePoolSize() <= 0) {
+            return new WasmBackedAppView.Guest(gameId, module);
+        }
+        return POOLS.computeIfAbsent(module, ignored -> new Pool(gameId, module)).acquire();
+    }
+
+    static void release(@NotNull Module module, @NotNull WasmBackedAppView.Guest guest) {
+        var pool = POOLS.get(module);
+        if (pool != null && guest.isReusable()) {
+            pool.release(guest);
+        }
+    }
+
+    /**
+     * Instantiates one guest of a game ahead of time, so that the next screen opening it doesn't have to. Only worth it
+     * for games that are in use, other games get their first guest when a screen opens them.
+     */
+    public static void prewarm(@NotNull Identifier gameId, @NotNull Module module) {
+        if (MiniTardisGames.getConfig().instancePoolSize() <= 0) {
+            return;
+        }
+        try {
+            var pool = POOLS.computeIfAbsent(module, ignored -> new Pool(gameId, module));
+            pool.release(pool.acquire());
+        } catch (RuntimeException e) {
+            MiniTardisGames.LOGGER.error("error while pre-warming game {}", gameId, e);
+        }
+    }
+
+    /**
+     * Drops guests that have been idle for longer than configured, called periodically from the server tick.
+     */
+    public static void evictIdle() {
+        var idleMillis = MiniTardisGames.getConfig().instancePoolIdleSeconds() * 1000;
+        if (idleMillis <= 0) {
+            return;
+        }
+        var cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        POOLS.values().removeIf(pool -> pool.evictIdle(cutoff));
+    }
+
+    public static void invalidate() {
+        POOLS.clear();
+    }
+
+    public static int size() {
+        return POOLS.values().stream().mapToInt(Pool::size).sum();
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    private static final class Pool {
+
+        @NotNull
+        private final Identifier gameId;
+        @NotNull
+        private final Module module;
+        private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+        @Nullable
+        private InstanceSnapshot snapshot;
+        @Nullable
+        private Module skeleton;
+
+        private Pool(@NotNull Identifier gameId, @NotNull Module module) {
+            this.gameId = gameId;
+            this.module = module;
+        }
+
+        private WasmBackedAppView.Guest acquire() {
+            synchronized (this) {
+                // the most recently used guest is the most likely to still be in the CPU caches
+                var entry = this.idle.pollLast();
+                if (entry != null) {
+                    HITS.incrementAndGet();
+                    return entry.guest();
+                }
+            }
+            MISSES.incrementAndGet();
+            InstanceSnapshot snapshot;
+            Module skeleton;
+            synchronized (this) {
+                snapshot = this.snapshot;
+                if (snapshot != null && this.skeleton == null) {
+                    this.skeleton = ModuleCache.skeleton(this.module);
+                }
+                skeleton = this.skeleton;
+            }
+            if (snapshot == null) {
+                var guest = new WasmBackedAppView.Guest(this.gameId, this.module);
+                synchronized (this) {
+                    if (this.snapshot == null) {
+                        this.snapshot = InstanceSnapshot.capture(guest.getInstance(), true);
+                    }
+                }
+                return guest;
+            }
+            var guest = new WasmBackedAppView.Guest(this.gameId, this.module, skeleton);
+            // a guest of the module itself already looks like the snapshot
+            if (skeleton != this.module) {
+                restore(snapshot, guest);
+            }
+            return guest;
+        }
+
+        private void restore(InstanceSnapshot snapshot, WasmBackedAppView.Guest guest) {
+            var event = new FlightRecorderEvents.ModuleLoad();
+            event.begin();
+            snapshot.restore(guest.getInstance());
+            if (event.shouldCommit()) {
+                event.game = this.gameId.toString();
+                event.phase = "restore";
+                event.commit();
+            }
+        }
+
+        private void release(WasmBackedAppView.Guest guest) {
+            InstanceSnapshot snapshot;
+            synchronized (this) {
+                if (this.idle.size() >= MiniTardisGames.getConfig().instancePoolSize() || this.snapshot == null) {
+                    return;
+                }
+                snapshot = this.snapshot;
+            }
+            restore(snapshot, guest);
+            synchronized (this) {
+                if (this.idle.size() < MiniTardisGames.getConfig().instancePoolSize()) {
+                    this.idle.addLast(new Entry(guest, System.nanoTime()));
+                }
+            }
+        }
+
+        /**
+         * @return whether the pool is empty afterwards and can be dropped
+         */
+        private synchronized boolean evictIdle(long cutoff) {
+            while (!this.idle.isEmpty() && this.idle.peekFirst().releasedAt() - cutoff < 0) {
+                this.idle.pollFirst();
+            }
+            return this.idle.isEmpty();
+        }
+
+        private synchronized int size() {
+            return this.idle.size();
+        }
+    }
+
+    private record Entry(WasmBackedAppView.Guest guest, long releasedAt) {
+    }
+}
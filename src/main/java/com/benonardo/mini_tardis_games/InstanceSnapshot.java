@@ -0,0 +1,113 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.types.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The linear memory and globals of an {@link Instance} at one point in time.
+ * Restoring it makes an instance look exactly like it did when the snapshot was taken, as long as the game doesn't
+ * modify its tables, which none of the bindings do.
+ */
+final class InstanceSnapshot {
+
+    private static final byte[] ZERO_PAGE = new byte[Memory.PAGE_SIZE];
+
+    @Nullable
+    private final byte[] memory;
+    private final int memorySize;
+    private final boolean compressed;
+    private final Value[] globals;
+
+    private InstanceSnapshot(@Nullable byte[] memory, int memorySize, boolean compressed, Value[] globals) {
+        this.memory = memory;
+        this.memorySize = memorySize;
+        this.compressed = compressed;
+        this.globals = globals;
+    }
+
+    /**
+     * @param compress whether to deflate the memory, for snapshots that are kept around for long but rarely restored
+     */
+    @NotNull
+    static InstanceSnapshot capture(@NotNull Instance instance, boolean compress) {
+        var memory = instance.memory();
+        var bytes = memory == null ? null : memory.readBytes(0, memory.pages() * Memory.PAGE_SIZE);
+        var memorySize = bytes == null ? 0 : bytes.length;
+        if (bytes != null && compress) {
+            bytes = deflate(bytes);
+        }
+        var globals = new ArrayList<Value>();
+        // Chicory doesn't expose the number of globals, so read until it runs out
+        while (true) {
+            try {
+                globals.add(instance.readGlobal(globals.size()).getValue());
+            } catch (RuntimeException e) {
+                break;
+            }
+        }
+        return new InstanceSnapshot(bytes, memorySize, compress, globals.toArray(Value[]::new));
+    }
+
+    void restore(@NotNull Instance instance) {
+        var memory = instance.memory();
+        if (memory != null && this.memory != null) {
+            var pages = this.memorySize / Memory.PAGE_SIZE;
+            if (memory.pages() < pages) {
+                memory.grow(pages - memory.pages());
+            }
+            memory.write(0, this.compressed ? inflate(this.memory, this.memorySize) : this.memory);
+            // memory can't shrink, pages the guest grew since the snapshot only have to be cleared
+            for (var address = this.memorySize; address < memory.pages() * Memory.PAGE_SIZE; address += Memory.PAGE_SIZE) {
+                memory.write(address, ZERO_PAGE);
+            }
+        }
+        for (var i = 0; i < this.globals.length; i++) {
+            if (!this.globals[i].equals(instance.readGlobal(i).getValue())) {
+                instance.writeGlobal(i, this.globals[i]);
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        // most of a guest's memory is usually untouched zero pages, the fastest level already gets rid of those
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            var output = new ByteArrayOutputStream(data.length / 8);
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int size) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            var output = new byte[size];
+            var offset = 0;
+            while (offset < size && !inflater.finished()) {
+                offset += inflater.inflate(output, offset, size - offset);
+            }
+            return output;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted instance snapshot", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
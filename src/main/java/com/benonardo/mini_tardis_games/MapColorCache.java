@@ -0,0 +1,72 @@
+package com.benonardo.mini_tardis_games;
+
+import eu.pb4.mapcanvas.api.core.CanvasColor;
+import eu.pb4.mapcanvas.api.utils.CanvasUtils;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * Replaces the linear palette search of {@link CanvasUtils#findClosestColor(int)} with a table lookup.
+ * <p>
+ * Colors that are part of the map palette are matched exactly, every other color is quantized to 6 bits per channel
+ * and resolved through a lookup table that is filled lazily. Concurrent fills of the same entry always write the same
+ * value, so the table can be shared between threads without locking.
+ */
+public final class MapColorCache {
+
+    private static final int BITS_PER_CHANNEL = 6;
+    private static final int DROPPED_BITS = 8 - BITS_PER_CHANNEL;
+    private static final CanvasColor[] COLORS = CanvasColor.values();
+    // ordinal + 1, 0 means not computed yet
+    private static final short[] QUANTIZED = new short[1 << (3 * BITS_PER_CHANNEL)];
+    private static final Int2ObjectOpenHashMap<CanvasColor> EXACT = new Int2ObjectOpenHashMap<>();
+
+    static {
+        for (var color : COLORS) {
+            var rgb = color.getRgbColor() & 0xFFFFFF;
+            EXACT.putIfAbsent(rgb, CanvasUtils.findClosestColor(rgb));
+        }
+    }
+
+    private MapColorCache() {
+    }
+
+    public static CanvasColor fromRgb(int rgb) {
+        rgb &= 0xFFFFFF;
+        var exact = EXACT.get(rgb);
+        if (exact != null) {
+            return exact;
+        }
+        var index = quantize(rgb);
+        var cached = QUANTIZED[index];
+        if (cached == 0) {
+            var color = CanvasUtils.findClosestColor(center(index));
+            QUANTIZED[index] = (short) (color.ordinal() + 1);
+            return color;
+        }
+        return COLORS[cached - 1];
+    }
+
+    public static CanvasColor fromArgb(int argb) {
+        if (argb >>> 24 == 0xFF) {
+            return fromRgb(argb);
+        }
+        // translucent colors are rare, leave their alpha handling to map canvas
+        return CanvasUtils.findClosestColorARGB(argb);
+    }
+
+    private static int quantize(int rgb) {
+        var red = (rgb >> 16 & 0xFF) >> DROPPED_BITS;
+        var green = (rgb >> 8 & 0xFF) >> DROPPED_BITS;
+        var blue = (rgb & 0xFF) >> DROPPED_BITS;
+        return red << (2 * BITS_PER_CHANNEL) | green << BITS_PER_CHANNEL | blue;
+    }
+
+    private static int center(int index) {
+        var mask = (1 << BITS_PER_CHANNEL) - 1;
+        var half = 1 << (DROPPED_BITS - 1);
+        var red = (index >> (2 * BITS_PER_CHANNEL) & mask) << DROPPED_BITS | half;
+        var green = (index >> BITS_PER_CHANNEL & mask) << DROPPED_BITS | half;
+        var blue = (index & mask) << DROPPED_BITS | half;
+        return red << 16 | green << 8 | blue;
+    }
+}
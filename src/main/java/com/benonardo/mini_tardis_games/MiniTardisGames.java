@@ -1,18 +1,22 @@
 package com.benonardo.mini_tardis_games;
 
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import dev.enjarai.minitardis.component.screen.app.ScreenAppType;
 import dev.enjarai.minitardis.item.FloppyItem;
 import dev.enjarai.minitardis.item.ModItems;
 import eu.pb4.mapcanvas.api.core.CanvasColor;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.command.argument.IdentifierArgumentType;
 import net.minecraft.registry.Registry;
 import net.minecraft.resource.ResourceType;
 import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
 import net.minecraft.util.Identifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,13 +26,26 @@ import java.nio.file.Path;
 public class MiniTardisGames implements ModInitializer {
 	public static final String MOD_ID = "mini_tardis_games";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+    private static MiniTardisGamesConfig config = MiniTardisGamesConfig.DEFAULT;
 
 	@Override
 	public void onInitialize() {
+        config = MiniTardisGamesConfig.load(FabricLoader.getInstance().getConfigDir().resolve(MOD_ID + ".json"));
+
 		Registry.register(ScreenAppType.REGISTRY, new Identifier(MOD_ID, "custom"), CustomApp.TYPE);
 
         ResourceManagerHelper.get(ResourceType.SERVER_DATA).registerReloadListener(new GameManager());
 
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            FramePacer.onServerTick(server.getTickTime());
+            if (server.getTicks() % 20 == 0) {
+                GuestMemory.enforce();
+            }
+            if (server.getTicks() % 200 == 0) {
+                InstancePool.evictIdle();
+            }
+        });
+
 		CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> dispatcher.register(CommandManager.literal("minitardisgames").then(CommandManager.literal("install").then(CommandManager.argument("game", IdentifierArgumentType.identifier()).executes(context -> {
             var player = context.getSource().getPlayer();
             if (player == null) return 0;
@@ -43,12 +60,101 @@ public class MiniTardisGames implements ModInitializer {
             FloppyItem.addApp(handStack, new CustomApp(IdentifierArgumentType.getIdentifier(context, "game")));
             return 1;
         }))).then(CommandManager.literal("list").executes(context -> {
-            context.getSource().sendMessage(Text.literal(GameManager.GAMES.toString()));
+            context.getSource().sendMessage(Text.literal(GameManager.getGames().keySet().toString()));
+            context.getSource().sendMessage(Text.literal("Module cache: " + ModuleCache.size() + " modules, " + ModuleCache.getHits() + " hits, " + ModuleCache.getMisses() + " misses"));
+            context.getSource().sendMessage(Text.literal("Instance pool: " + InstancePool.size() + " idle instances, " + InstancePool.getHits() + " hits, " + InstancePool.getMisses() + " misses"));
+            context.getSource().sendMessage(Text.literal("Guest memory: " + GuestMemory.getResidentBytes() / 1024 / 1024 + " MiB in " + GuestMemory.getResidentCount() + " instances, " + GuestMemory.getHibernations() + " hibernations"));
+            var glyphRunLookups = GlyphRunCache.getHits() + GlyphRunCache.getMisses();
+            context.getSource().sendMessage(Text.literal("Glyph run cache: " + GlyphRunCache.size() + " texts, " + GlyphRunCache.getHits() + " hits, " + GlyphRunCache.getMisses() + " misses"
+                    + (glyphRunLookups == 0 ? "" : " (" + GlyphRunCache.getHits() * 100 / glyphRunLookups + "% hit rate)")));
+            context.getSource().sendMessage(Text.literal("Budget overruns: " + ExecutionBudget.getOverruns()));
+
+            return 1;
+        })).then(CommandManager.literal("profile").executes(context -> {
+            var snapshots = GameMetrics.snapshot();
+            if (snapshots.isEmpty()) {
+                context.getSource().sendMessage(Text.literal("No game has been run yet"));
+            }
+            for (var snapshot : snapshots) {
+                sendProfile(context.getSource(), snapshot);
+            }
+
+            return snapshots.size();
+        }).then(CommandManager.literal("reset").executes(context -> {
+            GameMetrics.reset();
+            context.getSource().sendMessage(Text.literal("Reset all game metrics"));
 
             return 1;
-        }))));
+        })).then(CommandManager.argument("game", IdentifierArgumentType.identifier()).executes(context -> {
+            sendProfile(context.getSource(), GameMetrics.of(IdentifierArgumentType.getIdentifier(context, "game")).snapshotGame());
+
+            return 1;
+        }).then(CommandManager.argument("seconds", IntegerArgumentType.integer(1, 300)).executes(context -> {
+            var source = context.getSource();
+            var game = IdentifierArgumentType.getIdentifier(context, "game");
+            var unsupportedReason = GuestProfiler.getUnsupportedReason();
+            if (unsupportedReason != null) {
+                source.sendMessage(Text.literal("Profiling guest code is unsupported with this Chicory version: " + unsupportedReason).formatted(Formatting.RED));
+                return 0;
+            }
+            var seconds = IntegerArgumentType.getInteger(context, "seconds");
+            var server = source.getServer();
+            if (!GuestProfiler.start(game, seconds, result -> server.execute(() -> sendSamples(source, result)))) {
+                source.sendMessage(Text.literal(game + " is already being profiled"));
+                return 0;
+            }
+            source.sendMessage(Text.literal("Sampling the wall clock time of " + game + "'s functions for " + seconds + " seconds"));
+
+            return 1;
+        })))).then(CommandManager.literal("record").then(CommandManager.argument("game", IdentifierArgumentType.identifier()).then(CommandManager.argument("seconds", IntegerArgumentType.integer(1, 3600)).executes(context -> {
+            var game = IdentifierArgumentType.getIdentifier(context, "game");
+            SessionTrace.arm(game, IntegerArgumentType.getInteger(context, "seconds"));
+            context.getSource().sendMessage(Text.literal("The next session of " + game + " will be recorded to " + SessionTrace.getDirectory()));
+
+            return 1;
+        }))))));
 	}
 
+    private static void sendProfile(ServerCommandSource source, GameMetrics.Snapshot snapshot) {
+        source.sendMessage(Text.literal(snapshot.gameId().toString()).formatted(Formatting.GOLD));
+        snapshot.exports().forEach((name, export) -> source.sendMessage(Text.literal(String.format(
+                "  %s: %d calls, p50 %.3fms, p99 %.3fms, max %.3fms",
+                name, export.calls(), export.p50Nanos() / 1e6, export.p99Nanos() / 1e6, export.maxNanos() / 1e6
+        ))));
+        source.sendMessage(Text.literal("  host calls: " + snapshot.hostCalls()));
+        source.sendMessage(Text.literal("  persistent data: " + snapshot.persistentBytesSaved() + " bytes saved, " + snapshot.persistentBytesLoaded() + " bytes loaded, " + snapshot.unchangedPersistentSaves() + " unchanged saves"));
+        source.sendMessage(Text.literal("  frames: " + snapshot.frames() + " drawn, " + snapshot.unchangedFrames() + " unchanged"));
+        source.sendMessage(Text.literal("  pixels: " + snapshot.pixelsSent() + " sent, " + snapshot.pixelsSkipped() + " skipped"));
+    }
+
+    private static void sendSamples(ServerCommandSource source, GuestProfiler.Result result) {
+        source.sendMessage(Text.literal(result.gameId().toString()).formatted(Formatting.GOLD));
+        if (result.samples() == 0 && result.lostSamples() > 0) {
+            source.sendMessage(Text.literal("  Profiling guest code is unsupported with this Chicory version: no call stack could be read").formatted(Formatting.RED));
+            return;
+        }
+        source.sendMessage(Text.literal(String.format(
+                "  %d wall clock samples of %.2fms, %d lost, written to %s",
+                result.samples(), result.nanosPerSample() / 1e6, result.lostSamples(), result.file()
+        )));
+        for (var function : result.topFunctions()) {
+            source.sendMessage(Text.literal(String.format(
+                    "  %5.1f%% of samples in %s", function.selfSamples() * 100.0 / result.samples(), function.name()
+            )));
+        }
+    }
+
+    public static MiniTardisGamesConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Replaces the config read on startup, for tools that run games outside of a server.
+     */
+    static void setConfig(MiniTardisGamesConfig config) {
+        MiniTardisGames.config = config;
+    }
+
 	public static Path getFile(String path) {
 		return FabricLoader.getInstance()
 				.getModContainer(MOD_ID)
@@ -0,0 +1,75 @@
+package com.benonardo.mini_tardis_games;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Server wide settings, read from {@code config/mini_tardis_games.json}. Missing entries fall back to their defaults.
+ *
+ * @param maxCallMillis the wall clock time a single call into a game may take before it's abandoned and the game closed,
+ *                      0 for no limit, which also runs calls on the calling thread instead of a watched runner thread
+ * @param maxHostCalls  the number of host functions a single call into a game may invoke, 0 for no limit
+ * @param asyncExecution whether games run on worker threads instead of the server thread
+ * @param workerThreads the number of worker threads for {@code asyncExecution}, 0 to pick one based on the processor count
+ * @param instancePoolSize the number of idle instances kept per game for reuse, 0 to instantiate every screen from scratch
+ * @param instancePoolIdleSeconds how long an idle instance is kept before it's dropped, 0 to keep it until the next reload
+ * @param maxInstancePages the number of 64 KiB pages a single game may grow its memory to, 0 for no limit
+ * @param maxGuestMemoryMegabytes the memory all running games may use together before some are hibernated, 0 for no limit
+ * @param hibernateIdleSeconds how long a game may go without being drawn or clicked before it's hibernated, 0 to never
+ * @param framePacingMspt the average tick time in milliseconds above which games are drawn and ticked less often, 0 to never
+ * @param maxPersistentDataBytes the most data a game may save for one installed app, 0 for no limit
+ * @param persistentDataCompressionThreshold the size from which saved data is deflated in the world file, 0 to never
+ * @param glyphRunCacheSize the number of rasterized texts kept for drawing them again, 0 to rasterize every time
+ */
+public record MiniTardisGamesConfig(long maxCallMillis, long maxHostCalls, boolean asyncExecution, int workerThreads,
+                                    int instancePoolSize, long instancePoolIdleSeconds, int maxInstancePages,
+                                    long maxGuestMemoryMegabytes, long hibernateIdleSeconds, double framePacingMspt,
+                                    int maxPersistentDataBytes, int persistentDataCompressionThreshold, int glyphRunCacheSize) {
+
+    public static final MiniTardisGamesConfig DEFAULT = new MiniTardisGamesConfig(50, 1_000_000, false, 0, 4, 300, 1024, 512, 120, 40, 1024 * 1024, 1024, 256);
+    public static final Codec<MiniTardisGamesConfig> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.LONG.optionalFieldOf("max_call_millis", DEFAULT.maxCallMillis()).forGetter(MiniTardisGamesConfig::maxCallMillis),
+            Codec.LONG.optionalFieldOf("max_host_calls", DEFAULT.maxHostCalls()).forGetter(MiniTardisGamesConfig::maxHostCalls),
+            Codec.BOOL.optionalFieldOf("async_execution", DEFAULT.asyncExecution()).forGetter(MiniTardisGamesConfig::asyncExecution),
+            Codec.INT.optionalFieldOf("worker_threads", DEFAULT.workerThreads()).forGetter(MiniTardisGamesConfig::workerThreads),
+            Codec.INT.optionalFieldOf("instance_pool_size", DEFAULT.instancePoolSize()).forGetter(MiniTardisGamesConfig::instancePoolSize),
+            Codec.LONG.optionalFieldOf("instance_pool_idle_seconds", DEFAULT.instancePoolIdleSeconds()).forGetter(MiniTardisGamesConfig::instancePoolIdleSeconds),
+            Codec.INT.optionalFieldOf("max_instance_pages", DEFAULT.maxInstancePages()).forGetter(MiniTardisGamesConfig::maxInstancePages),
+            Codec.LONG.optionalFieldOf("max_guest_memory_megabytes", DEFAULT.maxGuestMemoryMegabytes()).forGetter(MiniTardisGamesConfig::maxGuestMemoryMegabytes),
+            Codec.LONG.optionalFieldOf("hibernate_idle_seconds", DEFAULT.hibernateIdleSeconds()).forGetter(MiniTardisGamesConfig::hibernateIdleSeconds),
+            Codec.DOUBLE.optionalFieldOf("frame_pacing_mspt", DEFAULT.framePacingMspt()).forGetter(MiniTardisGamesConfig::framePacingMspt),
+            Codec.INT.optionalFieldOf("max_persistent_data_bytes", DEFAULT.maxPersistentDataBytes()).forGetter(MiniTardisGamesConfig::maxPersistentDataBytes),
+            Codec.INT.optionalFieldOf("persistent_data_compression_threshold", DEFAULT.persistentDataCompressionThreshold()).forGetter(MiniTardisGamesConfig::persistentDataCompressionThreshold),
+            Codec.INT.optionalFieldOf("glyph_run_cache_size", DEFAULT.glyphRunCacheSize()).forGetter(MiniTardisGamesConfig::glyphRunCacheSize)
+    ).apply(instance, MiniTardisGamesConfig::new));
+
+    public static MiniTardisGamesConfig load(Path path) {
+        var config = DEFAULT;
+        if (Files.exists(path)) {
+            try (var reader = Files.newBufferedReader(path)) {
+                config = CODEC.parse(JsonOps.INSTANCE, JsonParser.parseReader(reader))
+                        .resultOrPartial(error -> MiniTardisGames.LOGGER.error("error while reading config: {}", error))
+                        .orElse(DEFAULT);
+            } catch (IOException | RuntimeException e) {
+                MiniTardisGames.LOGGER.error("error while reading config", e);
+                return DEFAULT;
+            }
+        }
+        // write the file back so that newly added settings show up with their defaults
+        try {
+            var json = CODEC.encodeStart(JsonOps.INSTANCE, config).getOrThrow(false, error -> {});
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, new GsonBuilder().setPrettyPrinting().create().toJson(json));
+        } catch (IOException | RuntimeException e) {
+            MiniTardisGames.LOGGER.error("error while writing config", e);
+        }
+        return config;
+    }
+}
@@ -0,0 +1,163 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Module;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Holds the parsed {@link Module} of every game that has been opened since the last reload,
+ * so that opening a view only has to instantiate it.
+ */
+public final class ModuleCache {
+
+    private static final Map<Key, Module> MODULES = new ConcurrentHashMap<>();
+    // the bytes of modules without their data segments and start function, see skeleton()
+    private static final Map<Module, byte[]> SKELETONS = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final int CUSTOM_SECTION = 0;
+    private static final int START_SECTION = 8;
+    private static final int DATA_SECTION = 11;
+    private static final int DATA_COUNT_SECTION = 12;
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private ModuleCache() {
+    }
+
+    @NotNull
+    public static Module get(@NotNull Identifier id, @NotNull GameManager.Game game) {
+        var key = new Key(id, game.hash());
+        var module = MODULES.get(key);
+        if (module != null) {
+            HITS.incrementAndGet();
+            return module;
+        }
+        return MODULES.computeIfAbsent(key, ignored -> {
+            MISSES.incrementAndGet();
+            return parse(id, game.data());
+        });
+    }
+
+    /**
+     * Decompresses and parses the module of game {@code id}, which is recorded as the decode phase of a
+     * {@link FlightRecorderEvents.ModuleLoad} event.
+     */
+    @NotNull
+    public static Module parse(@NotNull Identifier id, byte[] gzippedModule) {
+        var event = new FlightRecorderEvents.ModuleLoad();
+        event.begin();
+        return decode(id, inflate(gzippedModule), event);
+    }
+
+    /**
+     * Like {@link #parse}, for a module that has already been decompressed.
+     */
+    @NotNull
+    public static Module parseInflated(@NotNull Identifier id, byte[] module) {
+        var event = new FlightRecorderEvents.ModuleLoad();
+        event.begin();
+        return decode(id, module, event);
+    }
+
+    public static byte[] inflate(byte[] gzippedModule) {
+        try (var stream = new GZIPInputStream(new ByteArrayInputStream(gzippedModule))) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Module decode(Identifier id, byte[] module, FlightRecorderEvents.ModuleLoad event) {
+        var parsed = Module.builder(module).build();
+        var skeleton = stripInitialization(module);
+        if (skeleton != null) {
+            SKELETONS.put(parsed, skeleton);
+        }
+        if (event.shouldCommit()) {
+            event.game = id.toString();
+            event.phase = "decode";
+            event.commit();
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns a module that instantiates like {@code module}, except that it doesn't copy its data segments into memory
+     * or run its start function. Only meant for instances whose memory and globals are restored from a snapshot
+     * right away, which already holds the result of both.
+     *
+     * @return {@code module} itself if it has neither, or couldn't be stripped of them
+     */
+    @NotNull
+    static Module skeleton(@NotNull Module module) {
+        var skeleton = SKELETONS.get(module);
+        return skeleton == null ? module : Module.builder(skeleton).build();
+    }
+
+    /**
+     * @return the module without its data and start sections, and without custom sections like names and debug
+     * information that instantiating doesn't need, null if it has neither of the first two or uses passive data
+     * segments, which its code could still copy from
+     */
+    private static byte[] stripInitialization(byte[] module) {
+        var reader = new WasmReader(module);
+        var stripped = new ByteArrayOutputStream();
+        // magic and version
+        stripped.write(module, 0, reader.position());
+        var strippedAny = false;
+        try {
+            while (reader.hasMore()) {
+                var start = reader.position();
+                var id = reader.readByte();
+                var end = reader.readEnd(reader.length());
+                if (id == DATA_COUNT_SECTION) {
+                    return null;
+                } else if (id == DATA_SECTION || id == START_SECTION) {
+                    strippedAny = true;
+                } else if (id != CUSTOM_SECTION) {
+                    stripped.write(module, start, end - start);
+                }
+                reader.skipTo(end);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+        return strippedAny ? stripped.toByteArray() : null;
+    }
+
+    /**
+     * Adds a module that was parsed ahead of time, so the first view of the game doesn't have to.
+     */
+    public static void put(@NotNull Identifier id, @NotNull GameManager.Game game, @NotNull Module module) {
+        MODULES.put(new Key(id, game.hash()), module);
+    }
+
+    public static void invalidate() {
+        MODULES.clear();
+    }
+
+    public static int size() {
+        return MODULES.size();
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    private record Key(Identifier id, String hash) {
+    }
+}
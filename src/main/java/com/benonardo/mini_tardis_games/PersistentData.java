@@ -0,0 +1,179 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Memory;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The bytes a game saved for one installed app. Instances never change, so the encoded form that ends up in the
+ * world is computed once per save of the game instead of once per save of the chunk.
+ * <p>
+ * Data of at least {@link MiniTardisGamesConfig#persistentDataCompressionThreshold()} bytes is stored deflated under
+ * {@code persistent_data_deflated}, everything else uncompressed under {@code persistent_data} like before.
+ */
+public final class PersistentData {
+
+    // the largest array most JVMs can allocate
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    public static final PersistentData EMPTY = new PersistentData(new byte[0]);
+    public static final MapCodec<PersistentData> MAP_CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+            Codec.BYTE_BUFFER.optionalFieldOf("persistent_data").forGetter(PersistentData::encodePlain),
+            Codec.BYTE_BUFFER.optionalFieldOf("persistent_data_deflated").forGetter(PersistentData::encodeDeflated)
+    ).apply(instance, PersistentData::decode));
+
+    private final byte[] data;
+    @Nullable
+    private ByteBuffer encoded;
+    private boolean deflated;
+
+    private PersistentData(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * @param data taken over without copying, it must not be modified afterwards
+     */
+    @NotNull
+    public static PersistentData wrap(@NotNull byte[] data) {
+        return data.length == 0 ? EMPTY : new PersistentData(data);
+    }
+
+    public int length() {
+        return this.data.length;
+    }
+
+    /**
+     * @return whether the guest memory at {@code address} holds exactly this data, checked without copying it out
+     */
+    public boolean matches(@NotNull Memory memory, int address, int length) {
+        if (length != this.data.length) {
+            return false;
+        }
+        for (var i = 0; i < length; i++) {
+            if (memory.read(address + i) != this.data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void writeTo(@NotNull Memory memory, int address) {
+        memory.write(address, this.data);
+    }
+
+    private synchronized void encode() {
+        if (this.encoded != null) {
+            return;
+        }
+        var threshold = MiniTardisGames.getConfig().persistentDataCompressionThreshold();
+        if (threshold > 0 && this.data.length >= threshold) {
+            var deflated = deflate(this.data);
+            if (deflated.length < this.data.length) {
+                this.encoded = ByteBuffer.wrap(deflated);
+                this.deflated = true;
+                return;
+            }
+        }
+        // wrapping the whole array lets the NBT ops use it directly instead of copying it
+        this.encoded = ByteBuffer.wrap(this.data);
+    }
+
+    private synchronized Optional<ByteBuffer> encodePlain() {
+        encode();
+        return this.deflated ? Optional.empty() : Optional.of(this.encoded);
+    }
+
+    private synchronized Optional<ByteBuffer> encodeDeflated() {
+        encode();
+        return this.deflated ? Optional.of(this.encoded) : Optional.empty();
+    }
+
+    private static PersistentData decode(Optional<ByteBuffer> plain, Optional<ByteBuffer> deflated) {
+        if (deflated.isPresent()) {
+            try {
+                return wrap(inflate(toArray(deflated.get())));
+            } catch (IllegalArgumentException e) {
+                MiniTardisGames.LOGGER.error("Discarding unreadable persistent data", e);
+                return EMPTY;
+            }
+        }
+        return plain.map(buffer -> wrap(toArray(buffer))).orElse(EMPTY);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        var array = new byte[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        var deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            var output = new ByteArrayOutputStream(data.length / 2);
+            var buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The most a game could have saved, the configured maximum or a game's higher override. Inflating stops there, so
+     * that a corrupted or crafted blob can't expand to far more than any game may store.
+     */
+    private static long maxInflatedBytes() {
+        var config = MiniTardisGames.getConfig();
+        if (config.maxPersistentDataBytes() <= 0) {
+            return MAX_ARRAY_LENGTH;
+        }
+        var max = (long) config.maxPersistentDataBytes();
+        for (var game : GameManager.getGames().values()) {
+            max = Math.max(max, game.metadata().maxPersistentDataBytes(config));
+        }
+        return Math.min(max, MAX_ARRAY_LENGTH);
+    }
+
+    private static byte[] inflate(byte[] data) {
+        var maxBytes = maxInflatedBytes();
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            var output = new ByteArrayOutputStream((int) Math.min(maxBytes, data.length * 4L));
+            var buffer = new byte[4096];
+            while (!inflater.finished()) {
+                var inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated deflated persistent data");
+                }
+                if (output.size() + (long) inflated > maxBytes) {
+                    throw new IllegalArgumentException("Deflated persistent data inflates to more than " + maxBytes + " bytes");
+                }
+                output.write(buffer, 0, inflated);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted deflated persistent data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
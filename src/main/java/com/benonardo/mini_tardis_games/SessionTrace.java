@@ -0,0 +1,440 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.wasm.types.Value;
+import com.google.gson.JsonElement;
+import com.mojang.serialization.JsonOps;
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.util.Identifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recorded game session: every export call in order, together with everything the guest got from the host that
+ * can differ between two runs, namely random numbers, the time, the target frame rate, persistent data and the input
+ * events written into its memory. Replaying the calls while feeding back those results runs the guest through exactly
+ * the same states, so two builds can be compared on a real session. After every {@code mtg_draw} the CRC32 of the
+ * canvas is recorded as well, to tell whether the replay still draws the same frames.
+ * <p>
+ * Recording starts when a view allocates a fresh guest for an armed game and ends when that guest is released or the
+ * requested duration is over. Traces are gzipped streams of tagged entries with variable length integers, after a
+ * header with the game's id, the hash of its module and its metadata.
+ */
+public final class SessionTrace {
+
+    private static final int MAGIC = 0x4D544754;
+    private static final int VERSION = 2;
+
+    static final int END = 0;
+    static final int CALL = 1;
+    static final int RANDOM = 2;
+    static final int NANO_TIME = 3;
+    static final int TARGET_FPS = 4;
+    static final int PERSISTENT_LEN = 5;
+    static final int PERSISTENT_DATA = 6;
+    static final int INPUT = 7;
+    static final int FRAME = 8;
+
+    private static final Map<Identifier, Long> ARMED = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH.mm.ss", Locale.ROOT);
+
+    private SessionTrace() {
+    }
+
+    /**
+     * Records the next session of {@code gameId} that starts from scratch, for at most {@code seconds}.
+     */
+    public static void arm(@NotNull Identifier gameId, int seconds) {
+        ARMED.put(gameId, TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    public static Path getDirectory() {
+        return FabricLoader.getInstance().getGameDir().resolve(MiniTardisGames.MOD_ID).resolve("traces");
+    }
+
+    @Nullable
+    static Recorder start(@NotNull Identifier gameId) {
+        var duration = ARMED.remove(gameId);
+        if (duration == null) {
+            return null;
+        }
+        var file = getDirectory().resolve(gameId.getNamespace() + "_" + gameId.getPath().replace('/', '_') + "_" + LocalDateTime.now().format(FILE_TIME) + ".mtgtrace");
+        try {
+            Files.createDirectories(file.getParent());
+            var recorder = new Recorder(file, gameId, System.nanoTime() + duration);
+            MiniTardisGames.LOGGER.info("Recording a session of game {} to {}", gameId, file);
+            return recorder;
+        } catch (IOException e) {
+            MiniTardisGames.LOGGER.error("error while starting to record game {}", gameId, e);
+            return null;
+        }
+    }
+
+    /**
+     * The CRC32 of a canvas' raw colors, row by row.
+     */
+    public static long checksum(@NotNull DrawableCanvas canvas) {
+        var crc = new CRC32();
+        var row = new byte[canvas.getWidth()];
+        for (var y = 0; y < canvas.getHeight(); y++) {
+            for (var x = 0; x < row.length; x++) {
+                row[x] = canvas.getRaw(x, y);
+            }
+            crc.update(row);
+        }
+        return crc.getValue();
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        // zigzag, so that small negative numbers stay small too
+        var zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) (zigzag & 0x7F | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        var zigzag = 0L;
+        for (var shift = 0; ; shift += 7) {
+            if (shift > 63) {
+                throw new IOException("Malformed variable length integer");
+            }
+            var b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    /**
+     * Written to by the guest's thread only. A failing write is logged once and ends the recording.
+     */
+    static final class Recorder implements Closeable {
+
+        private final Path file;
+        private final DataOutputStream out;
+        private final long endNanos;
+        private long lastNanoTime;
+        private boolean failed;
+
+        private Recorder(Path file, Identifier gameId, long endNanos) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))));
+            this.endNanos = endNanos;
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeUTF(gameId.toString());
+            var game = GameManager.getGame(gameId);
+            this.out.writeUTF(game == null ? "" : game.hash());
+            var metadata = game == null ? GameMetadata.EMPTY : game.metadata();
+            this.out.writeUTF(GameMetadata.CODEC.encodeStart(JsonOps.INSTANCE, metadata).result().map(JsonElement::toString).orElse("{}"));
+        }
+
+        boolean isOver() {
+            return this.failed || System.nanoTime() - this.endNanos > 0;
+        }
+
+        void call(GameMetrics.Export export, Value[] args) {
+            write(out -> {
+                out.writeByte(CALL);
+                out.writeByte(export.ordinal());
+                out.writeByte(args.length);
+                for (var arg : args) {
+                    writeVarLong(out, arg.asInt());
+                }
+            });
+        }
+
+        void random(int value) {
+            write(out -> {
+                out.writeByte(RANDOM);
+                out.writeInt(value);
+            });
+        }
+
+        void nanoTime(long value) {
+            write(out -> {
+                out.writeByte(NANO_TIME);
+                // consecutive readings are close together
+                writeVarLong(out, value - this.lastNanoTime);
+                this.lastNanoTime = value;
+            });
+        }
+
+        void targetFps(int value) {
+            write(out -> {
+                out.writeByte(TARGET_FPS);
+                writeVarLong(out, value);
+            });
+        }
+
+        void persistentLen(int length) {
+            write(out -> {
+                out.writeByte(PERSISTENT_LEN);
+                writeVarLong(out, length);
+            });
+        }
+
+        void persistentData(byte[] data) {
+            write(out -> {
+                out.writeByte(PERSISTENT_DATA);
+                writeVarLong(out, data.length);
+                out.write(data);
+            });
+        }
+
+        void input(int address, byte[] events, int length) {
+            write(out -> {
+                out.writeByte(INPUT);
+                writeVarLong(out, address);
+                writeVarLong(out, length);
+                out.write(events, 0, length);
+            });
+        }
+
+        void frame(long checksum) {
+            write(out -> {
+                out.writeByte(FRAME);
+                out.writeInt((int) checksum);
+            });
+        }
+
+        private void write(Entry entry) {
+            if (this.failed) {
+                return;
+            }
+            try {
+                entry.write(this.out);
+            } catch (IOException e) {
+                this.failed = true;
+                MiniTardisGames.LOGGER.error("error while recording to {}, stopping", this.file, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.out.writeByte(END);
+                this.out.close();
+                MiniTardisGames.LOGGER.info("Finished recording {}", this.file);
+            } catch (IOException e) {
+                MiniTardisGames.LOGGER.error("error while finishing recording {}", this.file, e);
+            }
+        }
+
+        private interface Entry {
+            void write(DataOutputStream out) throws IOException;
+        }
+    }
+
+    /**
+     * Reads a trace back. The replay driver reads the calls, inputs and frames, the host functions of the replaying view
+     * take the results they would otherwise compute. Reading an entry other than the expected one means the replayed
+     * guest took a different path than the recorded one.
+     */
+    public static final class Player implements Closeable {
+
+        private final DataInputStream in;
+        private final Identifier gameId;
+        private final String gameHash;
+        private final GameMetadata metadata;
+        private long lastNanoTime;
+        private int next = -1;
+
+        private Player(DataInputStream in) throws IOException {
+            this.in = in;
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a session trace");
+            }
+            var version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session trace version " + version);
+            }
+            this.gameId = new Identifier(in.readUTF());
+            this.gameHash = in.readUTF();
+            var metadata = GameManager.readMetadata(this.gameId, new StringReader(in.readUTF()));
+            this.metadata = metadata == null ? GameMetadata.EMPTY : metadata;
+        }
+
+        @NotNull
+        public static Player open(@NotNull Path file) throws IOException {
+            return new Player(new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)))));
+        }
+
+        @NotNull
+        public Identifier getGameId() {
+            return this.gameId;
+        }
+
+        /**
+         * @return the SHA-256 hash of the recorded game's {@code .wasm.gz}, empty if it wasn't loaded from a datapack
+         */
+        @NotNull
+        public String getGameHash() {
+            return this.gameHash;
+        }
+
+        /**
+         * @return the settings of the recorded game's {@code .json} file
+         */
+        @NotNull
+        public GameMetadata getMetadata() {
+            return this.metadata;
+        }
+
+        /**
+         * @return the tag of the next entry, {@link #END} at the end of the trace
+         */
+        public int peek() {
+            if (this.next == -1) {
+                try {
+                    this.next = this.in.readUnsignedByte();
+                } catch (EOFException e) {
+                    // a recording cut short by a crash is still worth replaying up to that point
+                    this.next = END;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return this.next;
+        }
+
+        private void expect(int tag) {
+            var actual = peek();
+            if (actual != tag) {
+                throw new DivergedException("Expected trace entry " + tag + " but found " + actual);
+            }
+            this.next = -1;
+        }
+
+        @NotNull
+        public Call readCall() {
+            expect(CALL);
+            try {
+                var export = GameMetrics.Export.values()[this.in.readUnsignedByte()];
+                var args = new Value[this.in.readUnsignedByte()];
+                for (var i = 0; i < args.length; i++) {
+                    args[i] = Value.i32(readVarInt(this.in));
+                }
+                return new Call(export, args);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @NotNull
+        public Input readInput() {
+            expect(INPUT);
+            try {
+                var address = readVarInt(this.in);
+                return new Input(address, this.in.readNBytes(readVarInt(this.in)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public long readFrame() {
+            expect(FRAME);
+            try {
+                return Integer.toUnsignedLong(this.in.readInt());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int readRandom() {
+            expect(RANDOM);
+            try {
+                return this.in.readInt();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        long readNanoTime() {
+            expect(NANO_TIME);
+            try {
+                this.lastNanoTime += readVarLong(this.in);
+                return this.lastNanoTime;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int readTargetFps() {
+            expect(TARGET_FPS);
+            try {
+                return readVarInt(this.in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int readPersistentLen() {
+            expect(PERSISTENT_LEN);
+            try {
+                return readVarInt(this.in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte[] readPersistentData() {
+            expect(PERSISTENT_DATA);
+            try {
+                return this.in.readNBytes(readVarInt(this.in));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    public record Call(@NotNull GameMetrics.Export export, @NotNull Value[] args) {
+    }
+
+    public record Input(int address, byte[] events) {
+    }
+
+    /**
+     * Thrown when the replayed guest asks for something the recorded one didn't at that point.
+     */
+    public static final class DivergedException extends RuntimeException {
+
+        public DivergedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.dylibso.chicory.wasm.types.ValueType;
 import dev.enjarai.minitardis.block.console.ScreenBlockEntity;
 import dev.enjarai.minitardis.canvas.TardisCanvasUtils;
 import dev.enjarai.minitardis.component.screen.app.AppView;
+import eu.pb4.mapcanvas.api.core.CanvasImage;
 import eu.pb4.mapcanvas.api.core.DrawableCanvas;
 import eu.pb4.mapcanvas.api.font.DefaultFonts;
 import eu.pb4.mapcanvas.api.utils.CanvasUtils;
@@ -16,71 +17,291 @@ import net.minecraft.sound.SoundCategory;
 import net.minecraft.sound.SoundEvent;
 import net.minecraft.util.ClickType;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.random.Random;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.event.Level;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 public final class WasmBackedAppView implements AppView {
 
     @NotNull
     private final CustomApp app;
     @NotNull
-    private final ExportFunction draw;
-    @NotNull
-    private final ExportFunction onClick;
+    private final Module module;
+    private final boolean hasDrawBackground;
+    private final boolean hasScreenTick;
+    private final boolean hasScreenOpen;
+    private final boolean hasScreenClose;
+    private final boolean hasOnInput;
+    private final InputQueue input = new InputQueue();
+    private int inputBuffer = -1;
     @Nullable
-    private final ExportFunction drawBackground;
+    private SessionTrace.Recorder recorder;
     @Nullable
-    private final ExportFunction screenTick;
+    private final SessionTrace.Player player;
     @Nullable
-    private final ExportFunction screenOpen;
+    private GuestProfiler.Call profiledCall;
     @Nullable
-    private final ExportFunction screenClose;
-    private final int dataPtr;
-    private final Instance instance;
+    private volatile Guest guest;
+    @Nullable
+    private InstanceSnapshot hibernatedState;
+    // the last guest was abandoned in the middle of a call, until the screen closes
+    private boolean abandoned;
+    private int dataPtr;
+    // the arguments of every export that only takes the data pointer, built once instead of per call
+    private Value[] dataArgs = Value.EMPTY_VALUES;
+    // filled in before every call, the interpreter copies them onto its stack right away
+    private final Value[] clickArgs = new Value[4];
+    private final Value[] inputArgs = new Value[3];
+    private final ByteBuffer encodedInput = InputQueue.newBuffer();
+    private volatile long lastUsed = System.nanoTime();
+    @NotNull
+    private final ExecutionBudget budget;
+    @NotNull
+    private final GameMetrics metrics;
+    @Nullable
+    private final AsyncExecution async;
+    @NotNull
+    private final FramePacer pacer;
+    private final int maxPersistentDataBytes;
+    @NotNull
+    private final GameAssets assets;
+    @Nullable
+    private CanvasImage lastFrame;
+    private final DirtyTrackingCanvas trackingCanvas = new DirtyTrackingCanvas();
     @Nullable
     private DrawableCanvas canvas = null;
     @Nullable
-    private ScreenBlockEntity blockEntity;
+    private GameScreen screen;
+    @Nullable
+    private Random random;
+    private int submittedCommandsAddress;
+    private int submittedCommandsLength = -1;
 
-    public WasmBackedAppView(@NotNull CustomApp app, @NotNull Module module) {
+    public WasmBackedAppView(@NotNull CustomApp app, @NotNull Module module, @NotNull GameMetadata metadata, @NotNull GameAssets assets) {
+        this(app, module, metadata, assets, null);
+    }
+
+    /**
+     * @param player if not null, the view replays a recorded session: random numbers, time and everything else that
+     *               could differ between runs is taken from it, and the calls are made through {@link #replay}
+     */
+    WasmBackedAppView(@NotNull CustomApp app, @NotNull Module module, @NotNull GameMetadata metadata, @NotNull GameAssets assets, @Nullable SessionTrace.Player player) {
         this.app = app;
-        var functions = this.new BuiltinFunctions();
-        instance = module.instantiate(new HostImports(functions.all));
-        this.draw = instance.export("mtg_draw");
-        this.onClick = instance.export("mtg_on_click");
-        var allocResult = instance.export("mtg_alloc_data").apply();
-        if (allocResult.length != 1) {
-            throw new RuntimeException("alloc_data() returned multiple values");
+        this.module = module;
+        this.assets = assets;
+        this.player = player;
+        this.metrics = GameMetrics.of(app.getAppId());
+        this.budget = new ExecutionBudget(app.getAppId(), metadata.maxCallMillis(MiniTardisGames.getConfig()), metadata.maxHostCalls(MiniTardisGames.getConfig()));
+        this.async = MiniTardisGames.getConfig().asyncExecution() ? this.new AsyncExecution() : null;
+        this.pacer = new FramePacer(metadata.fpsCap().orElse(0));
+        this.maxPersistentDataBytes = metadata.maxPersistentDataBytes(MiniTardisGames.getConfig());
+        var guest = guest();
+        this.hasDrawBackground = guest.export(GameMetrics.Export.DRAW_BACKGROUND) != null;
+        this.hasScreenTick = guest.export(GameMetrics.Export.SCREEN_TICK) != null;
+        this.hasScreenOpen = guest.export(GameMetrics.Export.SCREEN_OPEN) != null;
+        this.hasScreenClose = guest.export(GameMetrics.Export.SCREEN_CLOSE) != null;
+        this.hasOnInput = guest.export(GameMetrics.Export.ON_INPUT) != null && guest.export(GameMetrics.Export.INPUT_BUFFER) != null;
+    }
+
+    /**
+     * Returns the guest of this view. If the view doesn't have one, because it was just created, its screen was closed
+     * or it was hibernated, one is taken from the {@link InstancePool} and either restored to the hibernated state
+     * or left to allocate its data from scratch.
+     */
+    @NotNull
+    private Guest guest() {
+        var guest = this.guest;
+        if (guest == null) {
+            guest = InstancePool.acquire(app.getAppId(), module);
+            guest.view = this;
+            this.guest = guest;
+            try {
+                if (this.hibernatedState != null) {
+                    this.hibernatedState.restore(guest.instance);
+                    this.hibernatedState = null;
+                } else {
+                    if (this.player == null && this.recorder == null) {
+                        this.recorder = SessionTrace.start(app.getAppId());
+                    }
+                    var allocResult = call(GameMetrics.Export.ALLOC_DATA, guest.requireExport(GameMetrics.Export.ALLOC_DATA), Value.EMPTY_VALUES);
+                    if (allocResult.length != 1) {
+                        throw new RuntimeException("alloc_data() returned multiple values");
+                    }
+                    this.dataPtr = allocResult[0].asInt();
+                    this.dataArgs = new Value[]{Value.i32(this.dataPtr)};
+                    this.inputBuffer = -1;
+                }
+            } catch (Throwable throwable) {
+                this.guest = null;
+                guest.view = null;
+                throw throwable;
+            }
+            GuestMemory.onResident(this);
         }
-        this.dataPtr = allocResult[0].asInt();
+        return guest;
+    }
 
-        var drawBackground = (ExportFunction)null;
-        try {
-            drawBackground = instance.export("mtg_draw_background");
-        } catch (ChicoryException ignored) {}
-        this.drawBackground = drawBackground;
-        var screenTick = (ExportFunction)null;
-        try {
-            screenTick = instance.export("mtg_screen_tick");
-        } catch (ChicoryException ignored) {}
-        this.screenTick = screenTick;
-        var screenOpen = (ExportFunction)null;
-        try {
-            screenOpen = instance.export("mtg_screen_open");
-        } catch (ChicoryException ignored) {}
-        this.screenOpen = screenOpen;
-        var screenClose = (ExportFunction)null;
+    private void releaseGuest() {
+        stopRecording();
+        this.hibernatedState = null;
+        this.abandoned = false;
+        var guest = this.guest;
+        if (guest != null) {
+            this.guest = null;
+            guest.view = null;
+            GuestMemory.onReleased(this);
+            InstancePool.release(module, guest);
+        }
+    }
+
+    /**
+     * Lets go of a guest whose call is still running on the {@link CallWatchdog}'s runner. Its state is lost, so
+     * unlike a released guest the game doesn't get to hear about its screen closing either.
+     */
+    private void abandonGuest() {
+        var guest = this.guest;
+        if (guest != null) {
+            guest.abandoned = true;
+            guest.reusable = false;
+            this.guest = null;
+            this.abandoned = true;
+            GuestMemory.onReleased(this);
+        }
+    }
+
+    /**
+     * Frees the guest's instance and keeps its state in a compressed snapshot instead,
+     * it is brought back the next time the game is called.
+     */
+    synchronized void hibernate() {
+        if (this.async != null) {
+            this.async.enqueue(this::hibernateGuest);
+        } else {
+            hibernateGuest();
+        }
+    }
+
+    private void hibernateGuest() {
+        var guest = this.guest;
+        if (guest != null) {
+            this.hibernatedState = InstanceSnapshot.capture(guest.instance, true);
+            this.guest = null;
+            guest.view = null;
+            GuestMemory.onHibernated(this);
+        }
+    }
+
+    Identifier getGameId() {
+        return app.getAppId();
+    }
+
+    long getLastUsed() {
+        return this.lastUsed;
+    }
+
+    long getResidentBytes() {
+        var guest = this.guest;
+        var memory = guest == null ? null : guest.instance.memory();
+        return memory == null ? 0 : (long) memory.pages() * Memory.PAGE_SIZE;
+    }
+
+    private void stopRecording() {
+        if (this.recorder != null) {
+            this.recorder.close();
+            this.recorder = null;
+        }
+    }
+
+    private Value[] call(GameMetrics.Export export, ExportFunction function, Value... args) {
+        if (this.recorder != null) {
+            if (this.recorder.isOver()) {
+                stopRecording();
+            } else {
+                this.recorder.call(export, args);
+            }
+        }
+        var profiler = GuestProfiler.get(app.getAppId());
+        var profiledGuest = this.guest;
+        if (profiler != null && profiledGuest != null) {
+            this.profiledCall = profiler.enter(profiledGuest.instance, export);
+        }
+        var event = new FlightRecorderEvents.ExportCall();
+        event.begin();
+        var start = System.nanoTime();
         try {
-            screenClose = instance.export("mtg_screen_close");
-        } catch (ChicoryException ignored) {}
-        this.screenClose = screenClose;
+            var result = budget.call(function, args);
+            var guest = this.guest;
+            if (guest != null) {
+                GuestMemory.checkPages(app.getAppId(), guest.instance.memory());
+            }
+            return result;
+        } catch (ExecutionBudget.ExceededException e) {
+            if (e.isCallAbandoned()) {
+                abandonGuest();
+            }
+            throw e;
+        } finally {
+            if (this.profiledCall != null) {
+                profiler.exit(this.profiledCall);
+                this.profiledCall = null;
+            }
+            metrics.export(export).record(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.game = app.getAppId().toString();
+                event.export = export.getName();
+                event.commit();
+            }
+        }
+    }
+
+    private void enter(@Nullable GameScreen screen, @NotNull Random random, @Nullable DrawableCanvas canvas) {
+        this.lastUsed = System.nanoTime();
+        this.screen = screen;
+        this.random = random;
+        this.canvas = canvas == null ? null : this.trackingCanvas.wrap(canvas);
+    }
+
+    private void exit() {
+        this.screen = null;
+        this.random = null;
+        this.canvas = null;
+        this.submittedCommandsLength = -1;
+    }
+
+    /**
+     * Runs an action that touches the world. Guests running on a worker thread can't do that themselves,
+     * so there it's deferred to the next time the server thread interacts with this view.
+     */
+    private void runOnServer(String function, Consumer<GameScreen> action) {
+        if (this.screen != null) {
+            action.accept(this.screen);
+        } else if (this.async != null && this.random != null) {
+            this.async.serverActions.add(action);
+        } else {
+            throw new IllegalStateException("Called " + function + " while not currently in a context???");
+        }
     }
 
-    private void handleThrowable(ScreenBlockEntity blockEntity, Throwable throwable, String function) {
+    private void handleThrowable(Throwable throwable, String function) {
+        // the guest was interrupted somewhere in the middle, so its instance can't be handed out again
+        var guest = this.guest;
+        if (guest != null) {
+            guest.reusable = false;
+        }
+
         var temp = throwable;
         boolean shouldSuppress;
         do {
@@ -90,337 +311,1034 @@ public final class WasmBackedAppView implements AppView {
 
         if (!shouldSuppress) {
             MiniTardisGames.LOGGER.error("WASM " + function, throwable);
-            blockEntity.closeApp();
+            if (this.async != null) {
+                this.async.closed = true;
+            }
+            runOnServer("close_app()", GameScreen::closeApp);
         }
     }
 
-    @Override
-    public synchronized void draw(ScreenBlockEntity blockEntity, DrawableCanvas canvas) {
-        this.canvas = canvas;
-        this.blockEntity = blockEntity;
+    private void executeSubmittedCommands() {
+        var guest = this.guest;
+        if (this.submittedCommandsLength != -1 && this.canvas != null && guest != null) {
+            var length = this.submittedCommandsLength;
+            this.submittedCommandsLength = -1;
+            DrawCommands.execute(this.canvas, guest.instance.memory(), this.submittedCommandsAddress, length);
+        }
+    }
+
+    private void runDraw(@Nullable GameScreen screen, @NotNull Random random, @NotNull DrawableCanvas canvas) {
+        enter(screen, random, canvas);
         try {
-            draw.apply(Value.i32(dataPtr));
+            var start = System.nanoTime();
+            call(GameMetrics.Export.DRAW, guest().requireExport(GameMetrics.Export.DRAW), dataArgs);
+            executeSubmittedCommands();
+            if (this.recorder != null) {
+                this.recorder.frame(SessionTrace.checksum(canvas));
+            }
+            pacer.recordFrame(System.nanoTime() - start);
+            metrics.onPixelsDrawn(trackingCanvas.getPixelsSent(), trackingCanvas.getPixelsSkipped());
+            metrics.onFrame(trackingCanvas.getPixelsSent() > 0);
         } catch (Throwable throwable) {
-            handleThrowable(blockEntity, throwable, "draw");
+            handleThrowable(throwable, GameMetrics.Export.DRAW.getName());
         } finally {
-            this.canvas = null;
-            this.blockEntity = null;
+            exit();
         }
     }
 
-    @Override
-    public synchronized boolean onClick(ScreenBlockEntity blockEntity, ServerPlayerEntity player, ClickType type, int x, int y) {
-        this.blockEntity = blockEntity;
+    private boolean runOnClick(@Nullable GameScreen screen, @NotNull Random random, ClickType type, int x, int y) {
+        enter(screen, random, null);
         try {
-            return onClick.apply(Value.i32(dataPtr), Value.i32(type.ordinal()), Value.i32(x), Value.i32(y))[0].asInt() != 0;
+            var onClick = guest().requireExport(GameMetrics.Export.ON_CLICK);
+            var args = this.clickArgs;
+            args[0] = dataArgs[0];
+            args[1] = HostValues.i32(type.ordinal());
+            args[2] = HostValues.i32(x);
+            args[3] = HostValues.i32(y);
+            return call(GameMetrics.Export.ON_CLICK, onClick, args)[0].asInt() != 0;
         } catch (Throwable throwable) {
-            handleThrowable(blockEntity, throwable, "on_click");
+            handleThrowable(throwable, GameMetrics.Export.ON_CLICK.getName());
             return false;
         } finally {
-            this.blockEntity = null;
+            exit();
+        }
+    }
+
+    private void runOnInput(@Nullable GameScreen screen, @NotNull Random random, InputQueue.Event[] events) {
+        enter(screen, random, null);
+        try {
+            var guest = guest();
+            if (this.inputBuffer == -1) {
+                this.inputBuffer = call(GameMetrics.Export.INPUT_BUFFER, guest.requireExport(GameMetrics.Export.INPUT_BUFFER), dataArgs)[0].asInt();
+            }
+            var onInput = guest.requireExport(GameMetrics.Export.ON_INPUT);
+            var args = this.inputArgs;
+            for (var start = 0; start < events.length; start += InputQueue.BATCH_SIZE) {
+                var count = Math.min(InputQueue.BATCH_SIZE, events.length - start);
+                var encoded = InputQueue.encode(events, start, count, this.encodedInput);
+                guest.instance.memory().write(this.inputBuffer, encoded.array(), 0, encoded.position());
+                if (this.recorder != null) {
+                    this.recorder.input(this.inputBuffer, encoded.array(), encoded.position());
+                }
+                args[0] = dataArgs[0];
+                args[1] = HostValues.i32(this.inputBuffer);
+                args[2] = HostValues.i32(count);
+                call(GameMetrics.Export.ON_INPUT, onInput, args);
+            }
+        } catch (Throwable throwable) {
+            handleThrowable(throwable, GameMetrics.Export.ON_INPUT.getName());
+        } finally {
+            exit();
+        }
+    }
+
+    private void runOptional(GameMetrics.Export export, @Nullable GameScreen screen, @NotNull Random random, @Nullable DrawableCanvas canvas) {
+        enter(screen, random, canvas);
+        try {
+            call(export, guest().requireExport(export), dataArgs);
+            executeSubmittedCommands();
+            if (canvas != null) {
+                metrics.onPixelsDrawn(trackingCanvas.getPixelsSent(), trackingCanvas.getPixelsSkipped());
+            }
+        } catch (Throwable throwable) {
+            handleThrowable(throwable, export.getName());
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Makes a recorded call. Inputs are written into guest memory beforehand with {@link #replayInput}. The recorded
+     * {@code mtg_alloc_data} call is made by the constructor, so it has to be read from the trace before.
+     *
+     * @return whether the call completed, false if the game threw or closed itself
+     * @throws SessionTrace.DivergedException if the game asked the host for something the recorded one didn't
+     */
+    synchronized boolean replay(@NotNull SessionTrace.Call call, @NotNull GameScreen screen, @Nullable DrawableCanvas canvas) {
+        enter(screen, screen.getRandom(), canvas);
+        try {
+            call(call.export(), guest().requireExport(call.export()), call.args());
+            executeSubmittedCommands();
+            return true;
+        } catch (Throwable throwable) {
+            for (var cause = throwable; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SessionTrace.DivergedException diverged) {
+                    throw diverged;
+                }
+            }
+            handleThrowable(throwable, call.export().getName());
+            return false;
+        } finally {
+            exit();
+        }
+    }
+
+    synchronized void replayInput(@NotNull SessionTrace.Input input) {
+        guest().instance.memory().write(input.address(), input.events());
+    }
+
+    private int nextRandom() {
+        if (this.random == null) {
+            throw new IllegalStateException("Called random_i32() while not currently in a context???");
+        }
+        var value = this.player != null ? this.player.readRandom() : this.random.nextInt();
+        if (this.recorder != null) {
+            this.recorder.random(value);
+        }
+        return value;
+    }
+
+    private long nextNanoTime() {
+        var value = this.player != null ? this.player.readNanoTime() : System.nanoTime();
+        if (this.recorder != null) {
+            this.recorder.nanoTime(value);
+        }
+        return value;
+    }
+
+    private int nextTargetFps() {
+        var value = this.player != null ? this.player.readTargetFps() : this.pacer.getTargetFps();
+        if (this.recorder != null) {
+            this.recorder.targetFps(value);
+        }
+        return value;
+    }
+
+    private int persistentDataLength() {
+        var value = this.player != null ? this.player.readPersistentLen() : this.app.getPersistentData().length();
+        if (this.recorder != null) {
+            this.recorder.persistentLen(value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    private int writePersistentData(Memory memory, int address) {
+        if (this.player != null) {
+            var data = this.player.readPersistentData();
+            memory.write(address, data);
+            return data.length;
+        }
+        var data = this.app.getPersistentData();
+        data.writeTo(memory, address);
+        if (this.recorder != null) {
+            this.recorder.persistentData(memory.readBytes(address, data.length()));
+        }
+        return data.length();
+    }
+
+    Instance getInstance() {
+        return guest().instance;
+    }
+
+    HostFunction[] getHostFunctions() {
+        return guest().hostFunctions;
+    }
+
+    /**
+     * Runs {@code action} as if it was called by the guest, for benchmarks and tools that call host functions directly.
+     */
+    synchronized void runAsGuest(GameScreen screen, @Nullable DrawableCanvas canvas, Runnable action) {
+        enter(screen, screen.getRandom(), canvas);
+        try {
+            guest();
+            budget.start();
+            action.run();
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public void draw(ScreenBlockEntity blockEntity, DrawableCanvas canvas) {
+        draw(GameScreen.of(blockEntity), canvas);
+    }
+
+    public synchronized void draw(GameScreen screen, DrawableCanvas canvas) {
+        var due = this.pacer.nextFrame();
+        if (this.async != null) {
+            this.async.draw(screen, canvas, due);
+        } else if (due || this.lastFrame == null) {
+            runDraw(screen, screen.getRandom(), canvas);
+            // skipped frames have to show something, and the screen may have drawn over the canvas in the meantime
+            if (this.pacer.isThrottled()) {
+                if (this.lastFrame == null || this.lastFrame.getWidth() != canvas.getWidth() || this.lastFrame.getHeight() != canvas.getHeight()) {
+                    this.lastFrame = new CanvasImage(canvas.getWidth(), canvas.getHeight());
+                }
+                WasmCanvasUtils.copy(canvas, this.lastFrame);
+            } else {
+                this.lastFrame = null;
+            }
+        } else {
+            WasmCanvasUtils.copy(this.lastFrame, canvas);
         }
     }
 
     @Override
-    public synchronized void drawBackground(ScreenBlockEntity blockEntity, DrawableCanvas canvas) {
-        if (this.drawBackground == null) {
+    public boolean onClick(ScreenBlockEntity blockEntity, ServerPlayerEntity player, ClickType type, int x, int y) {
+        return onClick(GameScreen.of(blockEntity), player.getId(), type, x, y);
+    }
+
+    /**
+     * Games exporting {@code mtg_on_input} get the click with the next tick, without waiting for the view's monitor,
+     * all others through {@code mtg_on_click} right away.
+     */
+    public boolean onClick(GameScreen screen, int player, ClickType type, int x, int y) {
+        if (this.hasOnInput) {
+            return this.input.offer(player, type, x, y);
+        }
+        return onClickNow(screen, type, x, y);
+    }
+
+    private synchronized boolean onClickNow(GameScreen screen, ClickType type, int x, int y) {
+        if (this.async != null) {
+            return this.async.onClick(screen, type, x, y);
+        } else {
+            return runOnClick(screen, screen.getRandom(), type, x, y);
+        }
+    }
+
+    @Override
+    public void drawBackground(ScreenBlockEntity blockEntity, DrawableCanvas canvas) {
+        if (!this.hasDrawBackground) {
             AppView.super.drawBackground(blockEntity, canvas);
         } else {
-            this.canvas = canvas;
-            this.blockEntity = blockEntity;
-            try {
-                drawBackground.apply(Value.i32(dataPtr));
-            } catch (Throwable throwable) {
-                handleThrowable(blockEntity, throwable, "draw_background");
-            } finally {
-                this.canvas = null;
-                this.blockEntity = null;
-            }
+            drawBackground(GameScreen.of(blockEntity), canvas);
+        }
+    }
+
+    public synchronized void drawBackground(GameScreen screen, DrawableCanvas canvas) {
+        if (!this.hasDrawBackground) {
+            return;
+        }
+        if (this.async != null) {
+            this.async.drawBackground(screen);
+        } else if (this.pacer.isFrameDue() || this.lastFrame == null) {
+            runOptional(GameMetrics.Export.DRAW_BACKGROUND, screen, screen.getRandom(), canvas);
         }
     }
 
     @Override
-    public synchronized void screenTick(ScreenBlockEntity blockEntity) {
-        if (this.screenTick == null) {
+    public void screenTick(ScreenBlockEntity blockEntity) {
+        if (!this.hasScreenTick) {
             AppView.super.screenTick(blockEntity);
-        } else {
-            this.blockEntity = blockEntity;
-            try {
-                screenTick.apply(Value.i32(dataPtr));
-            } catch (Throwable throwable) {
-                handleThrowable(blockEntity, throwable, "screen_tick");
-            } finally {
-                this.blockEntity = null;
+        }
+        if (this.hasScreenTick || this.hasOnInput) {
+            screenTick(GameScreen.of(blockEntity));
+        }
+    }
+
+    public synchronized void screenTick(GameScreen screen) {
+        // input isn't paced, a click should show up in the next frame no matter how loaded the server is
+        // while the last batch is still running, new clicks keep collecting in the bounded queue
+        if (this.hasOnInput && !this.input.isEmpty() && (this.async == null || !this.async.inputInFlight)) {
+            var events = this.input.drain();
+            if (this.async != null) {
+                this.async.onInput(screen, events);
+            } else {
+                runOnInput(screen, screen.getRandom(), events);
             }
         }
+        if (!this.hasScreenTick || !this.pacer.nextTick()) {
+            return;
+        }
+        if (this.async != null) {
+            this.async.screenTick(screen);
+        } else {
+            runOptional(GameMetrics.Export.SCREEN_TICK, screen, screen.getRandom(), null);
+        }
     }
 
     @Override
-    public synchronized void screenOpen(ScreenBlockEntity blockEntity) {
-        if (this.screenOpen == null) {
+    public void screenOpen(ScreenBlockEntity blockEntity) {
+        if (!this.hasScreenOpen) {
             AppView.super.screenOpen(blockEntity);
         } else {
-            this.blockEntity = blockEntity;
-            try {
-                screenOpen.apply(Value.i32(dataPtr));
-            } catch (Throwable throwable) {
-                handleThrowable(blockEntity, throwable, "screen_open");
-            } finally {
-                this.blockEntity = null;
-            }
+            screenOpen(GameScreen.of(blockEntity));
+        }
+    }
+
+    public synchronized void screenOpen(GameScreen screen) {
+        if (!this.hasScreenOpen) {
+            return;
+        }
+        if (this.async != null) {
+            this.async.submit(screen, random -> runOptional(GameMetrics.Export.SCREEN_OPEN, null, random, null));
+        } else {
+            runOptional(GameMetrics.Export.SCREEN_OPEN, screen, screen.getRandom(), null);
         }
     }
 
     @Override
-    public synchronized void screenClose(ScreenBlockEntity blockEntity) {
-        if (this.screenClose == null) {
-            AppView.super.screenOpen(blockEntity);
+    public void screenClose(ScreenBlockEntity blockEntity) {
+        if (!this.hasScreenClose) {
+            AppView.super.screenClose(blockEntity);
+        }
+        screenClose(GameScreen.of(blockEntity));
+    }
+
+    /**
+     * Lets the game know its screen closed and hands the guest back to the {@link InstancePool}.
+     * Should the view be used again afterwards, it gets a new guest that starts over from the persistent data.
+     */
+    public synchronized void screenClose(GameScreen screen) {
+        if (this.async != null) {
+            var async = this.async;
+            async.submitLifecycle(screen, random -> {
+                if (this.hasScreenClose && !async.closed && !this.abandoned) {
+                    runOptional(GameMetrics.Export.SCREEN_CLOSE, null, random, null);
+                }
+                releaseGuest();
+            });
         } else {
-            this.blockEntity = blockEntity;
-            try {
-                screenClose.apply(Value.i32(dataPtr));
-            } catch (Throwable throwable) {
-                handleThrowable(blockEntity, throwable, "screen_close");
-            } finally {
-                this.blockEntity = null;
+            if (this.hasScreenClose && !this.abandoned) {
+                runOptional(GameMetrics.Export.SCREEN_CLOSE, screen, screen.getRandom(), null);
             }
+            releaseGuest();
         }
     }
 
-    private final class BuiltinFunctions {
+    /**
+     * Runs the guest on {@link GuestWorkers} instead of the server thread. Calls of one view are executed in order,
+     * frames are rendered into a back buffer and the server thread only copies the last finished frame onto the screen.
+     * All fields except the concurrent queue are guarded by the view's monitor.
+     */
+    private final class AsyncExecution {
 
-        public final HostFunction log = new HostFunction(
-                (instance, args) -> {
-                    var messageAddress = args[0].asInt();
-                    var messageLen = args[1].asInt();
-                    var message = instance.memory().readString(messageAddress, messageLen);
-                    var level = args[2].asInt();
-                    MiniTardisGames.LOGGER.atLevel(Level.intToLevel(level)).log(message);
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_log",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction randomI32 = new HostFunction(
-                (instance, args) -> {
-                    if (blockEntity == null) {
-                        throw new IllegalStateException("Called random_i32() while not currently in a context???");
-                    }
-                    return new Value[]{Value.i32(blockEntity.drawRandom.nextInt())};
-                },
-                "mini_tardis_games",
-                "mtg_random_i32",
-                List.of(),
-                List.of()
-        );
-        public final HostFunction getWidth = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called get_width() while not currently drawing");
-                    }
-                    return new Value[]{Value.i32(canvas.getWidth())};
-                },
-                "mini_tardis_games",
-                "mtg_get_width",
-                List.of(),
-                List.of(ValueType.I32)
-        );
-        public final HostFunction getHeight = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called get_height() while not currently drawing");
-                    }
-                    return new Value[]{Value.i32(canvas.getHeight())};
-                },
-                "mini_tardis_games",
-                "mtg_get_height",
-                List.of(),
-                List.of(ValueType.I32)
-        );
-        public final HostFunction getRaw = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called get_raw(x, y) while not currently drawing");
-                    }
-                    var x = args[0].asInt();
-                    var y = args[1].asInt();
-                    return new Value[]{Value.i32(canvas.getRaw(x, y))};
-                },
-                "mini_tardis_games",
-                "mtg_get_raw",
-                List.of(ValueType.I32, ValueType.I32),
-                List.of(ValueType.I32)
-        );
-        public final HostFunction setRaw = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called set_raw(x, y, color) while not currently drawing");
-                    }
-                    var x = args[0].asInt();
-                    var y = args[1].asInt();
-                    var color = args[2].asInt();
-                    if (color < Byte.MIN_VALUE || color > Byte.MAX_VALUE) {
-                        throw new IllegalArgumentException("Raw color " + color + " is out of bounds for byte");
-                    }
-                    canvas.setRaw(x, y, (byte) color);
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_set_raw",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction setRgb = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called set_rgb(x, y, color) while not currently drawing");
-                    }
-                    var x = args[0].asInt();
-                    var y = args[1].asInt();
-                    var color = args[2].asInt();
-                    canvas.set(x, y, CanvasUtils.findClosestColor(color));
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_set_rgb",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction setArgb = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called set_argb(x, y, color) while not currently drawing");
-                    }
-                    var x = args[0].asInt();
-                    var y = args[1].asInt();
-                    var color = args[2].asInt();
-                    canvas.set(x, y, CanvasUtils.findClosestColorARGB(color));
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_set_argb",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction drawInbuiltSprite = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called draw_inbuilt_sprite(x, y, name_address, name_len) while not currently drawing");
-                    }
-                    var x = args[0].asInt();
-                    var y = args[1].asInt();
-                    var nameAddress = args[2].asInt();
-                    var nameLen = args[3].asInt();
-                    var name = instance.memory().readString(nameAddress, nameLen);
-                    CanvasUtils.draw(canvas, x, y, TardisCanvasUtils.getSprite(name));
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_draw_inbuilt_sprite",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction drawText = new HostFunction(
-                (instance, args) -> {
-                    if (canvas == null) {
-                        throw new IllegalStateException("Called draw_text(x, y, text_address, tex_len, size, argb) while not currently drawing");
-                    }
-                    var x = args[0].asInt();
-                    var y = args[1].asInt();
-                    var textAddress = args[2].asInt();
-                    var textLen = args[3].asInt();
-                    var text = instance.memory().readString(textAddress, textLen);
-                    var size = args[4].asInt();
-                    var argb = args[5].asInt();
-                    DefaultFonts.VANILLA.drawText(canvas, text, x, y, size, CanvasUtils.findClosestColorARGB(argb));
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_draw_text",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction playSound = new HostFunction(
-                (instance, args) -> {
-                    if (blockEntity == null || blockEntity.getWorld() == null) {
-                        throw new IllegalStateException("Called play_sound(id_address, id_len, category, volume, pitch) while not currently in a context???");
+        // clicks beyond this are dropped while the game is stuck, rather than piling up behind it
+        private static final int MAX_PENDING_CLICKS = 16;
+
+        private final Queue<Consumer<GameScreen>> serverActions = new ConcurrentLinkedQueue<>();
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private volatile boolean closed;
+        private boolean frameInFlight;
+        private boolean tickInFlight;
+        private boolean inputInFlight;
+        private int pendingClicks;
+        private boolean backgroundRequested;
+        @Nullable
+        private CanvasImage frontBuffer;
+        @Nullable
+        private CanvasImage backBuffer;
+
+        private void runServerActions(GameScreen screen) {
+            Consumer<GameScreen> action;
+            while ((action = this.serverActions.poll()) != null) {
+                action.accept(screen);
+            }
+        }
+
+        private void submit(GameScreen screen, Consumer<Random> job) {
+            if (this.closed) {
+                runServerActions(screen);
+                return;
+            }
+            submitLifecycle(screen, job);
+        }
+
+        /**
+         * Like {@link #submit}, but also after the game was closed, for jobs that clean up after it.
+         */
+        private void submitLifecycle(GameScreen screen, Consumer<Random> job) {
+            runServerActions(screen);
+            // the screen's random must only be used on the server thread
+            var random = Random.create(screen.getRandom().nextLong());
+            enqueue(() -> job.accept(random));
+        }
+
+        private void enqueue(Runnable job) {
+            this.tail = this.tail
+                    .exceptionally(throwable -> {
+                        MiniTardisGames.LOGGER.error("WASM worker rejected a job", throwable);
+                        return null;
+                    })
+                    .thenRunAsync(job, GuestWorkers.get());
+        }
+
+        private void draw(GameScreen screen, DrawableCanvas canvas, boolean due) {
+            if (this.frontBuffer != null) {
+                WasmCanvasUtils.copy(this.frontBuffer, canvas);
+            }
+            if (this.frameInFlight || !due) {
+                runServerActions(screen);
+                return;
+            }
+            if (this.backBuffer == null || this.backBuffer.getWidth() != canvas.getWidth() || this.backBuffer.getHeight() != canvas.getHeight()) {
+                this.backBuffer = new CanvasImage(canvas.getWidth(), canvas.getHeight());
+            }
+            var buffer = this.backBuffer;
+            WasmCanvasUtils.copy(canvas, buffer);
+            var drawBackground = this.backgroundRequested;
+            this.backgroundRequested = false;
+            this.frameInFlight = true;
+            submit(screen, random -> {
+                if (drawBackground) {
+                    runOptional(GameMetrics.Export.DRAW_BACKGROUND, null, random, buffer);
+                }
+                runDraw(null, random, buffer);
+                synchronized (WasmBackedAppView.this) {
+                    this.backBuffer = this.frontBuffer;
+                    this.frontBuffer = buffer;
+                    this.frameInFlight = false;
+                }
+            });
+        }
+
+        private void drawBackground(GameScreen screen) {
+            runServerActions(screen);
+            this.backgroundRequested = true;
+        }
+
+        private void screenTick(GameScreen screen) {
+            if (this.tickInFlight) {
+                runServerActions(screen);
+                return;
+            }
+            this.tickInFlight = true;
+            submit(screen, random -> {
+                runOptional(GameMetrics.Export.SCREEN_TICK, null, random, null);
+                synchronized (WasmBackedAppView.this) {
+                    this.tickInFlight = false;
+                }
+            });
+        }
+
+        private boolean onClick(GameScreen screen, ClickType type, int x, int y) {
+            if (this.pendingClicks >= MAX_PENDING_CLICKS) {
+                runServerActions(screen);
+                return false;
+            }
+            this.pendingClicks++;
+            // the result isn't known yet, so every click counts as handled
+            submit(screen, random -> {
+                try {
+                    runOnClick(null, random, type, x, y);
+                } finally {
+                    synchronized (WasmBackedAppView.this) {
+                        this.pendingClicks--;
                     }
-                    var idAddress = args[0].asInt();
-                    var idLen = args[1].asInt();
-                    var id = instance.memory().readString(idAddress, idLen);
-                    var category = SoundCategory.values()[args[2].asInt()];
-                    var volume = args[3].asFloat();
-                    var pitch = args[4].asFloat();
-                    blockEntity.getWorld().playSound(null, blockEntity.getPos(), SoundEvent.of(new Identifier(id)), category, volume, pitch);
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_play_sound",
-                List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.F32, ValueType.F32),
-                List.of()
-        );
-        public final HostFunction closeApp = new HostFunction(
-                (instance, args) -> {
-                    if (blockEntity == null) {
-                        throw new IllegalStateException("Called close_app() while not currently in a context???");
+                }
+            });
+            return !this.closed;
+        }
+
+        private void onInput(GameScreen screen, InputQueue.Event[] events) {
+            this.inputInFlight = true;
+            submit(screen, random -> {
+                try {
+                    runOnInput(null, random, events);
+                } finally {
+                    synchronized (WasmBackedAppView.this) {
+                        this.inputInFlight = false;
                     }
-                    blockEntity.closeApp();
-                    throw new AppClosedException();
-                },
-                "mini_tardis_games",
-                "mtg_close_app",
-                List.of(),
-                List.of(ValueType.I64)
-        );
-        public final HostFunction nanoTime = new HostFunction(
-                (instance, args) -> new Value[]{Value.i64(System.nanoTime())},
-                "mini_tardis_games",
-                "mtg_nano_time",
-                List.of(),
-                List.of(ValueType.I64)
-        );
-        public final HostFunction savePersistentData = new HostFunction(
-                (instance, args) -> {
-                    var dataAddress = args[0].asInt();
-                    var dataLen = args[1].asInt();
-                    var data = instance.memory().readBytes(dataAddress, dataLen);
-                    app.setPersistentData(ByteBuffer.wrap(data));
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_save_persistent_data",
-                List.of(ValueType.I32, ValueType.I32),
-                List.of()
-        );
-        public final HostFunction getPersistentDataLen = new HostFunction(
-                (instance, args) -> new Value[]{Value.i32(app.getPersistentData().limit())},
-                "mini_tardis_games",
-                "mtg_get_persistent_data_len",
-                List.of(),
-                List.of(ValueType.I32)
-        );
-        public final HostFunction getPersistentData = new HostFunction(
-                (instance, args) -> {
-                    var dataAddress = args[0].asInt();
-                    instance.memory().write(dataAddress, app.getPersistentData().array());
-                    return Value.EMPTY_VALUES;
-                },
-                "mini_tardis_games",
-                "mtg_get_persistent_data",
-                List.of(ValueType.I32),
-                List.of()
+                }
+            });
+        }
+    }
+
+    /**
+     * An instance of a game's module together with the host functions it was instantiated with. The host functions
+     * act on whichever view the guest is currently bound to, so the {@link InstancePool} can hand it to the next view.
+     */
+    static final class Guest {
+
+        // Chicory can only tell about a missing export by throwing, so that only happens for the first guest of a module
+        private static final Map<Module, boolean[]> EXPORTS = Collections.synchronizedMap(new WeakHashMap<>());
+        private static final String HOST_MODULE = "mini_tardis_games";
+        // the signatures games have to import the host functions with, checked when a game is loaded
+        private static final Map<String, WasmImportSection.FunctionType> HOST_FUNCTION_TYPES = Map.ofEntries(
+                hostFunctionType("mtg_log", List.of(ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_random_i32", List.of(), List.of(ValueType.I32)),
+                hostFunctionType("mtg_get_width", List.of(), List.of(ValueType.I32)),
+                hostFunctionType("mtg_get_height", List.of(), List.of(ValueType.I32)),
+                hostFunctionType("mtg_get_raw", List.of(ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_set_raw", List.of(ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_set_rgb", List.of(ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_set_argb", List.of(ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_blit_raw", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_submit_commands", List.of(ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_draw_inbuilt_sprite", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_draw_text", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_resolve_sprite", List.of(ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_draw_sprite", List.of(ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_resolve_font", List.of(ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_resolve_text", List.of(ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_draw_resolved_text", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_play_sound", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.F32, ValueType.F32), List.of()),
+                hostFunctionType("mtg_resolve_sound", List.of(ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_play_resolved_sound", List.of(ValueType.I32, ValueType.I32, ValueType.F32, ValueType.F32), List.of()),
+                hostFunctionType("mtg_close_app", List.of(), List.of()),
+                hostFunctionType("mtg_get_target_fps", List.of(), List.of(ValueType.I32)),
+                hostFunctionType("mtg_nano_time", List.of(), List.of(ValueType.I64)),
+                hostFunctionType("mtg_save_persistent_data", List.of(ValueType.I32, ValueType.I32), List.of()),
+                hostFunctionType("mtg_get_persistent_data_len", List.of(), List.of(ValueType.I32)),
+                hostFunctionType("mtg_get_persistent_data", List.of(ValueType.I32), List.of()),
+                hostFunctionType("mtg_open_asset", List.of(ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_get_asset_len", List.of(ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_read_asset", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32), List.of(ValueType.I32)),
+                hostFunctionType("mtg_blit_asset", List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32), List.of())
         );
-        public final HostFunction[] all = {
-                log, randomI32, getWidth, getHeight, getRaw, setRaw, setRgb, setArgb,
-                drawInbuiltSprite, drawText, playSound, closeApp, nanoTime, savePersistentData, getPersistentDataLen,
-                getPersistentData
-        };
 
-        private BuiltinFunctions() {
+        @NotNull
+        private final Identifier gameId;
+        @NotNull
+        private final GameMetrics metrics;
+        private final HostFunction[] hostFunctions;
+        private final Instance instance;
+        private final ExportFunction[] exports = new ExportFunction[GameMetrics.Export.values().length];
+        private final GuestResources resources;
+        @Nullable
+        private WasmBackedAppView view;
+        private boolean reusable = true;
+        // set once a call of this guest was left running, so it can't reach the view any more
+        private volatile boolean abandoned;
+
+        Guest(@NotNull Identifier gameId, @NotNull Module module) {
+            this(gameId, module, module);
+        }
+
+        /**
+         * @param template the module to instantiate, {@code module} or its {@link ModuleCache#skeleton}
+         */
+        Guest(@NotNull Identifier gameId, @NotNull Module module, @NotNull Module template) {
+            this.gameId = gameId;
+            this.metrics = GameMetrics.of(gameId);
+            this.resources = GuestResources.of(module);
+            var functions = this.new BuiltinFunctions();
+            this.hostFunctions = functions.all;
+            var loadEvent = new FlightRecorderEvents.ModuleLoad();
+            loadEvent.begin();
+            this.instance = template.instantiate(new HostImports(functions.all));
+            var present = EXPORTS.get(template);
+            for (var export : GameMetrics.Export.values()) {
+                if (present == null) {
+                    try {
+                        this.exports[export.ordinal()] = this.instance.export(export.getName());
+                    } catch (ChicoryException ignored) {}
+                } else if (present[export.ordinal()]) {
+                    this.exports[export.ordinal()] = this.instance.export(export.getName());
+                }
+            }
+            if (present == null) {
+                present = new boolean[this.exports.length];
+                for (var i = 0; i < present.length; i++) {
+                    present[i] = this.exports[i] != null;
+                }
+                EXPORTS.put(template, present);
+            }
+            if (loadEvent.shouldCommit()) {
+                loadEvent.game = gameId.toString();
+                loadEvent.phase = "instantiate";
+                loadEvent.commit();
+            }
+        }
+
+        private static Map.Entry<String, WasmImportSection.FunctionType> hostFunctionType(String name, List<ValueType> params, List<ValueType> returns) {
+            return Map.entry(name, new WasmImportSection.FunctionType(params, returns));
+        }
+
+        /**
+         * Checks that {@code module} only imports host functions that exist, with the signatures they are declared
+         * with, so a game built against another version of the host functions is rejected when it's loaded instead
+         * of failing whenever a screen opens it.
+         *
+         * @throws IllegalArgumentException listing every import that doesn't match
+         */
+        static void checkImports(byte[] module) {
+            var mismatches = new ArrayList<String>();
+            for (var imported : WasmImportSection.imports(module)) {
+                var type = HOST_MODULE.equals(imported.module()) ? HOST_FUNCTION_TYPES.get(imported.name()) : null;
+                if (type == null) {
+                    mismatches.add("unknown import " + imported.module() + "." + imported.name());
+                } else if (!type.equals(imported.type())) {
+                    mismatches.add(imported.name() + " imported as " + (imported.type() == null ? "a non-function" : imported.type()) + " instead of " + type);
+                }
+            }
+            if (!mismatches.isEmpty()) {
+                throw new IllegalArgumentException(String.join(", ", mismatches));
+            }
+        }
+
+        @Nullable
+        private ExportFunction export(GameMetrics.Export export) {
+            return this.exports[export.ordinal()];
+        }
+
+        @NotNull
+        private ExportFunction requireExport(GameMetrics.Export export) {
+            return Objects.requireNonNull(this.exports[export.ordinal()], export.getName());
+        }
+
+        Instance getInstance() {
+            return this.instance;
         }
 
+        boolean isReusable() {
+            return this.reusable;
+        }
+
+        private final class BuiltinFunctions {
+
+            // the interpreter copies results onto its stack right away and a guest only runs on one thread at a time,
+            // so a single array can be handed out for every result
+            private final Value[] result = new Value[1];
+            private Value lastI64 = HostValues.i64(0);
+
+            private Value[] returnI32(int value) {
+                this.result[0] = HostValues.i32(value);
+                return this.result;
+            }
+
+            private Value[] returnI64(long value) {
+                // Chicory's values are immutable and end up on the interpreter's stack, so only a repeated result,
+                // like a clock that didn't advance between two readings, can reuse the last one
+                if (this.lastI64.asLong() != value) {
+                    this.lastI64 = HostValues.i64(value);
+                }
+                this.result[0] = this.lastI64;
+                return this.result;
+            }
+
+            private HostFunction hostFunction(WasmFunctionHandle handle, String name) {
+                var type = HOST_FUNCTION_TYPES.get(name);
+                var calls = metrics.hostCallCounter(name);
+                return new HostFunction(
+                        (instance, args) -> {
+                            if (abandoned) {
+                                throw new IllegalStateException("Called " + name + " after the call was abandoned");
+                            }
+                            if (view == null) {
+                                throw new IllegalStateException("Called " + name + " while no screen is using this instance");
+                            }
+                            calls.increment();
+                            view.budget.onHostCall();
+                            var profiled = view.profiledCall;
+                            if (profiled == null) {
+                                return handle.apply(instance, args);
+                            }
+                            profiled.hostFunction = name;
+                            try {
+                                return handle.apply(instance, args);
+                            } finally {
+                                profiled.hostFunction = null;
+                            }
+                        },
+                        HOST_MODULE,
+                        name,
+                        type.params(),
+                        type.returns()
+                );
+            }
+
+            /**
+             * Like {@link #hostFunction}, but also emits a {@link FlightRecorderEvents.HostCall} event.
+             * Only meant for host functions that do enough work per call to show up in a recording.
+             */
+            private HostFunction tracedHostFunction(WasmFunctionHandle handle, String name) {
+                return hostFunction(
+                        (instance, args) -> {
+                            var event = new FlightRecorderEvents.HostCall();
+                            event.begin();
+                            try {
+                                return handle.apply(instance, args);
+                            } finally {
+                                if (event.shouldCommit()) {
+                                    event.game = gameId.toString();
+                                    event.hostFunction = name;
+                                    event.commit();
+                                }
+                            }
+                        },
+                        name
+                );
+            }
+
+            public final HostFunction log = hostFunction(
+                    (instance, args) -> {
+                        var messageAddress = args[0].asInt();
+                        var messageLen = args[1].asInt();
+                        var message = instance.memory().readString(messageAddress, messageLen);
+                        var level = args[2].asInt();
+                        MiniTardisGames.LOGGER.atLevel(Level.intToLevel(level)).log(message);
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_log"
+            );
+            public final HostFunction randomI32 = hostFunction(
+                    (instance, args) -> returnI32(view.nextRandom()),
+                    "mtg_random_i32"
+            );
+            public final HostFunction getWidth = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called get_width() while not currently drawing");
+                        }
+                        return returnI32(view.canvas.getWidth());
+                    },
+                    "mtg_get_width"
+            );
+            public final HostFunction getHeight = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called get_height() while not currently drawing");
+                        }
+                        return returnI32(view.canvas.getHeight());
+                    },
+                    "mtg_get_height"
+            );
+            public final HostFunction getRaw = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called get_raw(x, y) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        return returnI32(view.canvas.getRaw(x, y));
+                    },
+                    "mtg_get_raw"
+            );
+            public final HostFunction setRaw = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called set_raw(x, y, color) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var color = args[2].asInt();
+                        view.canvas.setRaw(x, y, WasmCanvasUtils.toRawColor(color));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_set_raw"
+            );
+            public final HostFunction setRgb = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called set_rgb(x, y, color) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var color = args[2].asInt();
+                        view.canvas.set(x, y, MapColorCache.fromRgb(color));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_set_rgb"
+            );
+            public final HostFunction setArgb = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called set_argb(x, y, color) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var color = args[2].asInt();
+                        view.canvas.set(x, y, MapColorCache.fromArgb(color));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_set_argb"
+            );
+            public final HostFunction blitRaw = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called blit_raw(x, y, width, height, data_address, stride) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var width = args[2].asInt();
+                        var height = args[3].asInt();
+                        var dataAddress = args[4].asInt();
+                        var stride = args[5].asInt();
+                        WasmCanvasUtils.blitRaw(view.canvas, instance.memory(), x, y, width, height, dataAddress, stride == 0 ? width : stride);
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_blit_raw"
+            );
+            public final HostFunction submitCommands = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called submit_commands(commands_address, commands_len) while not currently drawing");
+                        }
+                        // a second batch in the same frame has to be drawn on top of the first one
+                        view.executeSubmittedCommands();
+                        view.submittedCommandsAddress = args[0].asInt();
+                        view.submittedCommandsLength = args[1].asInt();
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_submit_commands"
+            );
+            public final HostFunction drawInbuiltSprite = tracedHostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called draw_inbuilt_sprite(x, y, name_address, name_len) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var nameAddress = args[2].asInt();
+                        var nameLen = args[3].asInt();
+                        var name = instance.memory().readString(nameAddress, nameLen);
+                        CanvasUtils.draw(view.canvas, x, y, TardisCanvasUtils.getSprite(name));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_draw_inbuilt_sprite"
+            );
+            public final HostFunction drawText = tracedHostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called draw_text(x, y, text_address, tex_len, size, argb) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var textAddress = args[2].asInt();
+                        var textLen = args[3].asInt();
+                        var text = instance.memory().readString(textAddress, textLen);
+                        var size = args[4].asInt();
+                        var argb = args[5].asInt();
+                        GlyphRunCache.drawText(view.canvas, DefaultFonts.VANILLA, text, x, y, size, MapColorCache.fromArgb(argb));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_draw_text"
+            );
+            public final HostFunction resolveSprite = hostFunction(
+                    (instance, args) -> {
+                        var nameAddress = args[0].asInt();
+                        var nameLen = args[1].asInt();
+                        return returnI32(resources.sprites.resolve(instance.memory().readString(nameAddress, nameLen)));
+                    },
+                    "mtg_resolve_sprite"
+            );
+            public final HostFunction drawSprite = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called draw_sprite(x, y, sprite) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        CanvasUtils.draw(view.canvas, x, y, resources.sprites.get(args[2].asInt()));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_draw_sprite"
+            );
+            public final HostFunction resolveFont = hostFunction(
+                    (instance, args) -> {
+                        var nameAddress = args[0].asInt();
+                        var nameLen = args[1].asInt();
+                        return returnI32(resources.fonts.resolve(instance.memory().readString(nameAddress, nameLen)));
+                    },
+                    "mtg_resolve_font"
+            );
+            public final HostFunction resolveText = hostFunction(
+                    (instance, args) -> {
+                        var textAddress = args[0].asInt();
+                        var textLen = args[1].asInt();
+                        return returnI32(resources.texts.resolve(instance.memory().readString(textAddress, textLen)));
+                    },
+                    "mtg_resolve_text"
+            );
+            public final HostFunction drawResolvedText = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called draw_resolved_text(x, y, font, text, size, argb) while not currently drawing");
+                        }
+                        var x = args[0].asInt();
+                        var y = args[1].asInt();
+                        var font = resources.fonts.get(args[2].asInt());
+                        var text = resources.texts.get(args[3].asInt());
+                        var size = args[4].asInt();
+                        var argb = args[5].asInt();
+                        GlyphRunCache.drawText(view.canvas, font, text, x, y, size, MapColorCache.fromArgb(argb));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_draw_resolved_text"
+            );
+            public final HostFunction playSound = hostFunction(
+                    (instance, args) -> {
+                        var idAddress = args[0].asInt();
+                        var idLen = args[1].asInt();
+                        var id = instance.memory().readString(idAddress, idLen);
+                        var sound = SoundEvent.of(new Identifier(id));
+                        var category = SoundCategory.values()[args[2].asInt()];
+                        var volume = args[3].asFloat();
+                        var pitch = args[4].asFloat();
+                        view.runOnServer("play_sound(id_address, id_len, category, volume, pitch)", screen -> screen.playSound(sound, category, volume, pitch));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_play_sound"
+            );
+            public final HostFunction resolveSound = hostFunction(
+                    (instance, args) -> {
+                        var idAddress = args[0].asInt();
+                        var idLen = args[1].asInt();
+                        return returnI32(resources.sounds.resolve(instance.memory().readString(idAddress, idLen)));
+                    },
+                    "mtg_resolve_sound"
+            );
+            public final HostFunction playResolvedSound = hostFunction(
+                    (instance, args) -> {
+                        var sound = resources.sounds.get(args[0].asInt());
+                        var category = SoundCategory.values()[args[1].asInt()];
+                        var volume = args[2].asFloat();
+                        var pitch = args[3].asFloat();
+                        view.runOnServer("play_resolved_sound(sound, category, volume, pitch)", screen -> screen.playSound(sound, category, volume, pitch));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_play_resolved_sound"
+            );
+            public final HostFunction closeApp = hostFunction(
+                    (instance, args) -> {
+                        view.runOnServer("close_app()", GameScreen::closeApp);
+                        throw new AppClosedException();
+                    },
+                    "mtg_close_app"
+            );
+            public final HostFunction getTargetFps = hostFunction(
+                    (instance, args) -> returnI32(view.nextTargetFps()),
+                    "mtg_get_target_fps"
+            );
+            public final HostFunction nanoTime = hostFunction(
+                    (instance, args) -> returnI64(view.nextNanoTime()),
+                    "mtg_nano_time"
+            );
+            public final HostFunction savePersistentData = tracedHostFunction(
+                    (instance, args) -> {
+                        var dataAddress = args[0].asInt();
+                        var dataLen = args[1].asInt();
+                        if (dataLen < 0 || view.maxPersistentDataBytes > 0 && dataLen > view.maxPersistentDataBytes) {
+                            throw new IllegalArgumentException("Persistent data of " + dataLen + " bytes exceeds the limit of " + view.maxPersistentDataBytes + " bytes");
+                        }
+                        // games tend to save after every change of their state, most of the time nothing changed
+                        if (view.app.getPersistentData().matches(instance.memory(), dataAddress, dataLen)) {
+                            metrics.onPersistentDataUnchanged();
+                            return Value.EMPTY_VALUES;
+                        }
+                        view.app.setPersistentData(PersistentData.wrap(instance.memory().readBytes(dataAddress, dataLen)));
+                        metrics.onPersistentDataSaved(dataLen);
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_save_persistent_data"
+            );
+            public final HostFunction getPersistentDataLen = hostFunction(
+                    (instance, args) -> returnI32(view.persistentDataLength()),
+                    "mtg_get_persistent_data_len"
+            );
+            public final HostFunction getPersistentData = hostFunction(
+                    (instance, args) -> {
+                        var dataAddress = args[0].asInt();
+                        metrics.onPersistentDataLoaded(view.writePersistentData(instance.memory(), dataAddress));
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_get_persistent_data"
+            );
+            public final HostFunction openAsset = hostFunction(
+                    (instance, args) -> {
+                        var nameAddress = args[0].asInt();
+                        var nameLen = args[1].asInt();
+                        return returnI32(view.assets.find(instance.memory().readString(nameAddress, nameLen)));
+                    },
+                    "mtg_open_asset"
+            );
+            public final HostFunction getAssetLen = hostFunction(
+                    (instance, args) -> returnI32(view.assets.length(args[0].asInt())),
+                    "mtg_get_asset_len"
+            );
+            public final HostFunction readAsset = hostFunction(
+                    (instance, args) -> {
+                        var asset = args[0].asInt();
+                        var offset = args[1].asInt();
+                        var dataAddress = args[2].asInt();
+                        var dataLen = args[3].asInt();
+                        return returnI32(view.assets.read(asset, offset, instance.memory(), dataAddress, dataLen));
+                    },
+                    "mtg_read_asset"
+            );
+            public final HostFunction blitAsset = hostFunction(
+                    (instance, args) -> {
+                        if (view.canvas == null) {
+                            throw new IllegalStateException("Called blit_asset(asset, offset, x, y, width, height, stride) while not currently drawing");
+                        }
+                        var asset = args[0].asInt();
+                        var offset = args[1].asInt();
+                        var x = args[2].asInt();
+                        var y = args[3].asInt();
+                        var width = args[4].asInt();
+                        var height = args[5].asInt();
+                        var stride = args[6].asInt();
+                        view.assets.blitRaw(asset, offset, view.canvas, x, y, width, height, stride == 0 ? width : stride);
+                        return Value.EMPTY_VALUES;
+                    },
+                    "mtg_blit_asset"
+            );
+            public final HostFunction[] all = {
+                    log, randomI32, getWidth, getHeight, getRaw, setRaw, setRgb, setArgb, blitRaw, submitCommands,
+                    drawInbuiltSprite, drawText, resolveSprite, drawSprite, resolveFont, resolveText, drawResolvedText,
+                    playSound, resolveSound, playResolvedSound, closeApp, getTargetFps, nanoTime, savePersistentData,
+                    getPersistentDataLen, getPersistentData, openAsset, getAssetLen, readAsset, blitAsset
+            };
+
+            private BuiltinFunctions() {
+            }
+
+        }
     }
 
     private static class AppClosedException extends RuntimeException {
@@ -0,0 +1,161 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.runtime.Memory;
+import eu.pb4.mapcanvas.api.core.DrawableCanvas;
+
+public final class WasmCanvasUtils {
+
+    private WasmCanvasUtils() {
+    }
+
+    /**
+     * Copies a rectangle of raw map colors from guest memory onto the canvas, clipping it to the canvas bounds.
+     * Rows start {@code stride} bytes apart, so a sub-rectangle of a larger buffer can be copied by offsetting {@code address}.
+     */
+    public static void blitRaw(DrawableCanvas canvas, Memory memory, int x, int y, int width, int height, int address, int stride) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Blit size " + width + "x" + height + " is negative");
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("Blit stride " + stride + " is smaller than its width " + width);
+        }
+        // in long, so that coordinates near the ends of the int range can't wrap around
+        var startX = (int) Math.min(width, Math.max(0, -(long) x));
+        var startY = (int) Math.min(height, Math.max(0, -(long) y));
+        var endX = (int) Math.min(width, (long) canvas.getWidth() - x);
+        var endY = (int) Math.min(height, (long) canvas.getHeight() - y);
+        if (startX >= endX) {
+            return;
+        }
+        for (var row = startY; row < endY; row++) {
+            // one bounds checked read per row rather than per pixel, Chicory's memory can only hand out a new array
+            var pixels = memory.readBytes(address + row * stride + startX, endX - startX);
+            for (var column = startX; column < endX; column++) {
+                canvas.setRaw(x + column, y + row, pixels[column - startX]);
+            }
+        }
+    }
+
+    /**
+     * Copies every pixel of {@code source} onto {@code target}, leaving pixels that already match alone
+     * so that copying an unchanged frame doesn't mark a screen's canvas dirty.
+     */
+    public static void copy(DrawableCanvas source, DrawableCanvas target) {
+        var width = Math.min(source.getWidth(), target.getWidth());
+        var height = Math.min(source.getHeight(), target.getHeight());
+        for (var y = 0; y < height; y++) {
+            for (var x = 0; x < width; x++) {
+                var color = source.getRaw(x, y);
+                if (target.getRaw(x, y) != color) {
+                    target.setRaw(x, y, color);
+                }
+            }
+        }
+    }
+
+    public static byte toRawColor(int color) {
+        if (color < Byte.MIN_VALUE || color > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Raw color " + color + " is out of bounds for byte");
+        }
+        return (byte) color;
+    }
+
+    public static void fillRaw(DrawableCanvas canvas, int x, int y, int width, int height, byte color) {
+        var startX = Math.max(0, x);
+        var startY = Math.max(0, y);
+        var endX = (int) Math.min(canvas.getWidth(), (long) x + width);
+        var endY = (int) Math.min(canvas.getHeight(), (long) y + height);
+        for (var pixelY = startY; pixelY < endY; pixelY++) {
+            for (var pixelX = startX; pixelX < endX; pixelX++) {
+                canvas.setRaw(pixelX, pixelY, color);
+            }
+        }
+    }
+
+    /**
+     * Draws a line with Bresenham's algorithm. The guest's endpoints can be anywhere in the int range, so the line is
+     * clipped to the canvas first (Liang-Barsky) and only the visible part is walked.
+     */
+    public static void lineRaw(DrawableCanvas canvas, int x0, int y0, int x1, int y1, byte color) {
+        var width = canvas.getWidth();
+        var height = canvas.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        var deltaX = (double) x1 - x0;
+        var deltaY = (double) y1 - y0;
+        var enter = 0.0;
+        var leave = 1.0;
+        for (var edge = 0; edge < 4; edge++) {
+            double direction;
+            double distance;
+            switch (edge) {
+                case 0 -> {
+                    direction = -deltaX;
+                    distance = x0;
+                }
+                case 1 -> {
+                    direction = deltaX;
+                    distance = width - 1.0 - x0;
+                }
+                case 2 -> {
+                    direction = -deltaY;
+                    distance = y0;
+                }
+                default -> {
+                    direction = deltaY;
+                    distance = height - 1.0 - y0;
+                }
+            }
+            if (direction == 0) {
+                if (distance < 0) {
+                    // parallel to this edge and outside of it
+                    return;
+                }
+                continue;
+            }
+            var t = distance / direction;
+            if (direction < 0) {
+                if (t > leave) {
+                    return;
+                }
+                enter = Math.max(enter, t);
+            } else {
+                if (t < enter) {
+                    return;
+                }
+                leave = Math.min(leave, t);
+            }
+        }
+        var startX = clamp(Math.round(x0 + enter * deltaX), width);
+        var startY = clamp(Math.round(y0 + enter * deltaY), height);
+        var endX = clamp(Math.round(x0 + leave * deltaX), width);
+        var endY = clamp(Math.round(y0 + leave * deltaY), height);
+
+        var stepsX = Math.abs(endX - startX);
+        var stepsY = -Math.abs(endY - startY);
+        var stepX = startX < endX ? 1 : -1;
+        var stepY = startY < endY ? 1 : -1;
+        var error = stepsX + stepsY;
+        // both ends are on the canvas now, so this is never more than its width plus its height
+        for (var pixels = 0L; pixels <= (long) width + height; pixels++) {
+            canvas.setRaw((int) startX, (int) startY, color);
+            if (startX == endX && startY == endY) {
+                break;
+            }
+            var doubledError = 2 * error;
+            if (doubledError >= stepsY) {
+                error += stepsY;
+                startX += stepX;
+            }
+            if (doubledError <= stepsX) {
+                error += stepsX;
+                startY += stepY;
+            }
+        }
+    }
+
+    private static long clamp(long value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
@@ -0,0 +1,142 @@
+package com.benonardo.mini_tardis_games;
+
+import com.dylibso.chicory.wasm.types.ValueType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what a WASM module imports from its type and import sections, so the imports can be checked against the host
+ * functions before the module is instantiated.
+ */
+final class WasmImportSection {
+
+    private static final int TYPE_SECTION = 1;
+    private static final int IMPORT_SECTION = 2;
+    private static final int FUNCTION_TYPE = 0x60;
+    private static final int FUNCTION_IMPORT = 0;
+    private static final int TABLE_IMPORT = 1;
+    private static final int MEMORY_IMPORT = 2;
+    private static final int GLOBAL_IMPORT = 3;
+
+    private WasmImportSection() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the type or import section is malformed
+     */
+    @NotNull
+    static List<Import> imports(byte[] module) {
+        try {
+            return readImports(new WasmReader(module));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed import section", e);
+        }
+    }
+
+    private static List<Import> readImports(WasmReader reader) {
+        // types with value types the host functions don't use stay null, importing a function of such a type fails
+        var types = new ArrayList<FunctionType>();
+        var imports = new ArrayList<Import>();
+        while (reader.hasMore()) {
+            var id = reader.readByte();
+            var end = reader.readEnd(reader.length());
+            if (id == TYPE_SECTION) {
+                for (var count = reader.readU32(); count > 0; count--) {
+                    if (reader.readByte() != FUNCTION_TYPE) {
+                        throw new IllegalArgumentException("Unknown type form at " + (reader.position() - 1));
+                    }
+                    var params = readValueTypes(reader, end);
+                    var returns = readValueTypes(reader, end);
+                    types.add(params == null || returns == null ? null : new FunctionType(params, returns));
+                }
+            } else if (id == IMPORT_SECTION) {
+                for (var count = reader.readU32(); count > 0; count--) {
+                    var module = reader.readName(end);
+                    var name = reader.readName(end);
+                    imports.add(new Import(module, name, readImportType(reader, types)));
+                }
+                // the type section comes first, nothing after the import section matters
+                return imports;
+            }
+            reader.skipTo(end);
+        }
+        return imports;
+    }
+
+    @Nullable
+    private static FunctionType readImportType(WasmReader reader, List<FunctionType> types) {
+        var kind = reader.readByte();
+        switch (kind) {
+            case FUNCTION_IMPORT -> {
+                var index = reader.readU32();
+                if (index >= types.size()) {
+                    throw new IllegalArgumentException("Unknown type " + index);
+                }
+                return types.get((int) index);
+            }
+            case TABLE_IMPORT -> {
+                // reference type, then limits
+                reader.readByte();
+                skipLimits(reader);
+            }
+            case MEMORY_IMPORT -> skipLimits(reader);
+            case GLOBAL_IMPORT -> {
+                // value type and mutability
+                reader.readByte();
+                reader.readByte();
+            }
+            default -> throw new IllegalArgumentException("Unknown import kind " + kind);
+        }
+        return null;
+    }
+
+    private static void skipLimits(WasmReader reader) {
+        var flags = reader.readByte();
+        reader.readU32();
+        if ((flags & 1) != 0) {
+            reader.readU32();
+        }
+    }
+
+    /**
+     * @return the value types, null if any of them isn't a number type
+     */
+    @Nullable
+    private static List<ValueType> readValueTypes(WasmReader reader, int end) {
+        var count = reader.readU32();
+        if (count > end - reader.position()) {
+            throw new IndexOutOfBoundsException(count + " value types at " + reader.position() + " exceed " + end);
+        }
+        var valueTypes = new ArrayList<ValueType>((int) count);
+        var supported = true;
+        for (var i = 0; i < count; i++) {
+            var valueType = switch (reader.readByte()) {
+                case 0x7F -> ValueType.I32;
+                case 0x7E -> ValueType.I64;
+                case 0x7D -> ValueType.F32;
+                case 0x7C -> ValueType.F64;
+                default -> null;
+            };
+            supported &= valueType != null;
+            valueTypes.add(valueType);
+        }
+        return supported ? List.copyOf(valueTypes) : null;
+    }
+
+    /**
+     * @param type the function type, null for imports of tables, memories and globals
+     */
+    record Import(@NotNull String module, @NotNull String name, @Nullable FunctionType type) {
+    }
+
+    record FunctionType(@NotNull List<ValueType> params, @NotNull List<ValueType> returns) {
+
+        @Override
+        public String toString() {
+            return this.params + " -> " + this.returns;
+        }
+    }
+}
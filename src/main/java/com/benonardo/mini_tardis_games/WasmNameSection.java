@@ -0,0 +1,57 @@
+package com.benonardo.mini_tardis_games;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the function names from the {@code name} custom section of a WASM module, which compilers emit unless debug
+ * information is stripped. Indices count imported functions first, like the module's function index space.
+ */
+final class WasmNameSection {
+
+    private static final int CUSTOM_SECTION = 0;
+    private static final int FUNCTION_NAMES = 1;
+
+    private WasmNameSection() {
+    }
+
+    /**
+     * @return the names by function index, empty if the module has no name section or it is malformed
+     */
+    @NotNull
+    static Map<Integer, String> functionNames(byte[] module) {
+        var names = new HashMap<Integer, String>();
+        try {
+            readFunctionNames(new WasmReader(module), names);
+        } catch (IndexOutOfBoundsException e) {
+            MiniTardisGames.LOGGER.debug("Ignoring malformed name section", e);
+        }
+        return names;
+    }
+
+    private static void readFunctionNames(WasmReader reader, Map<Integer, String> names) {
+        while (reader.hasMore()) {
+            var id = reader.readByte();
+            var end = reader.readEnd(reader.length());
+            if (id == CUSTOM_SECTION && "name".equals(reader.readName(end))) {
+                while (reader.position() < end) {
+                    var subsection = reader.readByte();
+                    var subsectionEnd = reader.readEnd(end);
+                    if (subsection == FUNCTION_NAMES) {
+                        // every entry takes at least two bytes, so a bogus count runs out of subsection
+                        for (var count = reader.readU32(); count > 0; count--) {
+                            var index = (int) reader.readU32();
+                            names.put(index, reader.readName(subsectionEnd));
+                        }
+                        return;
+                    }
+                    reader.skipTo(subsectionEnd);
+                }
+                return;
+            }
+            reader.skipTo(end);
+        }
+    }
+}
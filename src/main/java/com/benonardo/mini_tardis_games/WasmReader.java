@@ -0,0 +1,78 @@
+package com.benonardo.mini_tardis_games;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Walks the sections of a WASM module. Sizes and counts are unsigned LEB128 and every size has to stay within its
+ * enclosing section, anything else throws an {@link IndexOutOfBoundsException}, so a malformed module can't make a
+ * reader loop or jump backwards.
+ */
+final class WasmReader {
+
+    private final byte[] module;
+    private int position;
+
+    WasmReader(byte[] module) {
+        this.module = module;
+        // magic and version
+        this.position = 8;
+    }
+
+    boolean hasMore() {
+        return this.position < this.module.length;
+    }
+
+    int length() {
+        return this.module.length;
+    }
+
+    int position() {
+        return this.position;
+    }
+
+    void skipTo(int end) {
+        this.position = end;
+    }
+
+    byte readByte() {
+        return this.module[this.position++];
+    }
+
+    /**
+     * Reads the size of a section or subsection and returns where it ends, which has to be after the current position
+     * and no further than {@code limit}.
+     */
+    int readEnd(int limit) {
+        var size = readU32();
+        if (size == 0 || size > limit - this.position) {
+            throw new IndexOutOfBoundsException("Size " + size + " at " + this.position + " exceeds " + limit);
+        }
+        return this.position + (int) size;
+    }
+
+    String readName(int limit) {
+        // unlike sections, names may be empty
+        var length = readU32();
+        if (length > limit - this.position) {
+            throw new IndexOutOfBoundsException("Name of length " + length + " at " + this.position + " exceeds " + limit);
+        }
+        var name = new String(this.module, this.position, (int) length, StandardCharsets.UTF_8);
+        this.position += (int) length;
+        return name;
+    }
+
+    /**
+     * @return the unsigned LEB128 value at the current position, which may exceed {@link Integer#MAX_VALUE}
+     */
+    long readU32() {
+        var result = 0L;
+        for (var shift = 0; shift < 35; shift += 7) {
+            var b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result & 0xFFFFFFFFL;
+            }
+        }
+        throw new IndexOutOfBoundsException("Malformed LEB128 at " + this.position);
+    }
+}